@@ -0,0 +1,253 @@
+package fun.yanwk.playground.hamming;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 以 long[] 存储的比特缓冲区
+ *
+ * @author YAN Wenkun
+ * {@link Utils} 中的方法一次只处理一个字节中的一个比特，每次调用都要做一次除法和一次取余。
+ * 本类把比特序列按 64 位一组存放，提供任意比特偏移上的整段读写、异或、计数与复制，热点循环因此可以一次处理 64 个比特。
+ * 比特顺序与字节数组一致：第 0 号比特即是第 0 字节的最高位，每个 long 的最高位在前（大端序）。
+ * 实例有状态，不可在多个线程间共享。
+ */
+final class BitBuffer {
+
+    private final long[] words;
+    // 容量，单位比特
+    private final long size;
+
+    /**
+     * @param size 容量，单位比特，初始全为 0
+     */
+    BitBuffer(long size) {
+        this.size = size;
+        this.words = new long[(int) ((size + 63) >>> 6)];
+    }
+
+    /**
+     * 由字节数组构造，容量为 len × 8 比特
+     */
+    static BitBuffer of(byte[] bytes, int off, int len) {
+        BitBuffer buffer = new BitBuffer(len * 8L);
+        buffer.load(bytes, off, len);
+        return buffer;
+    }
+
+    static BitBuffer of(byte[] bytes) {
+        return of(bytes, 0, bytes.length);
+    }
+
+    /**
+     * 容量，单位比特
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * 从字节数组读入 len 字节，覆盖第 0 号比特起的内容，其余比特清零
+     */
+    void load(byte[] src, int off, int len) {
+        final ByteBuffer in = ByteBuffer.wrap(src, off, len);
+        int w = 0;
+        while (in.remaining() >= 8) {
+            words[w++] = in.getLong();
+        }
+        if (in.hasRemaining()) {
+            final int tail = in.remaining();
+            long v = 0;
+            while (in.hasRemaining()) {
+                v = (v << 8) | (in.get() & 0xFF);
+            }
+            words[w++] = v << (64 - tail * 8);
+        }
+        Arrays.fill(words, w, words.length, 0L);
+    }
+
+    /**
+     * 把第 0 号比特起的 len 字节写入字节数组
+     */
+    void store(byte[] dst, int off, int len) {
+        final ByteBuffer out = ByteBuffer.wrap(dst, off, len);
+        int w = 0;
+        while (out.remaining() >= 8) {
+            out.putLong(words[w++]);
+        }
+        for (int shift = 56; out.hasRemaining(); shift -= 8) {
+            out.put((byte) (words[w] >>> shift));
+        }
+    }
+
+    byte[] toByteArray() {
+        final byte[] bytes = new byte[(int) (size / 8)];
+        store(bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    /**
+     * 全部清零
+     */
+    void clear() {
+        Arrays.fill(words, 0L);
+    }
+
+    boolean get(long bit) {
+        return (words[(int) (bit >>> 6)] << bit) < 0; // 移位数只取低 6 位
+    }
+
+    void flip(long bit) {
+        words[(int) (bit >>> 6)] ^= Long.MIN_VALUE >>> bit;
+    }
+
+    /**
+     * 读取从 pos 开始的 n 个比特，右对齐返回
+     *
+     * @param n 1 到 64
+     */
+    long get(long pos, int n) {
+        final int w = (int) (pos >>> 6);
+        final int o = (int) (pos & 63);
+        long v = words[w] << o;
+        if (o + n > 64) {
+            v |= words[w + 1] >>> (64 - o);
+        }
+        return v >>> (64 - n);
+    }
+
+    /**
+     * 把 value 的低 n 位写入从 pos 开始的 n 个比特
+     *
+     * @param n 1 到 64
+     */
+    void put(long pos, int n, long value) {
+        apply(pos, n, value, true);
+    }
+
+    /**
+     * 把 value 的低 n 位异或到从 pos 开始的 n 个比特上
+     *
+     * @param n 1 到 64
+     */
+    void xor(long pos, int n, long value) {
+        apply(pos, n, value, false);
+    }
+
+    private void apply(long pos, int n, long value, boolean overwrite) {
+        final long mask = -1L >>> (64 - n);
+        final long v = value & mask;
+        final int w = (int) (pos >>> 6);
+        final int shift = 64 - (int) (pos & 63) - n;
+        if (shift >= 0) {
+            words[w] = (overwrite ? words[w] & ~(mask << shift) : words[w]) ^ (v << shift);
+        } else {
+            // 跨越两个 long：前一个取高 n - s 位，后一个取低 s 位
+            final int s = -shift;
+            words[w] = (overwrite ? words[w] & ~(mask >>> s) : words[w]) ^ (v >>> s);
+            words[w + 1] = (overwrite ? words[w + 1] & (-1L >>> s) : words[w + 1]) ^ (v << (64 - s));
+        }
+    }
+
+    /**
+     * 翻转 [from, to) 范围内的全部比特
+     */
+    void flipRange(long from, long to) {
+        forRange(from, to, (w, mask) -> words[w] ^= mask);
+    }
+
+    /**
+     * 清零 [from, to) 范围内的全部比特
+     */
+    void clearRange(long from, long to) {
+        forRange(from, to, (w, mask) -> words[w] &= ~mask);
+    }
+
+    /**
+     * [from, to) 范围内值为 1 的比特数
+     */
+    int popcount(long from, long to) {
+        if (from >= to) {
+            return 0;
+        }
+        final int first = (int) (from >>> 6);
+        final int last = (int) ((to - 1) >>> 6);
+        final long head = -1L >>> (from & 63);
+        final long tail = -1L << (63 - ((to - 1) & 63));
+        if (first == last) {
+            return Long.bitCount(words[first] & head & tail);
+        }
+        int count = Long.bitCount(words[first] & head) + Long.bitCount(words[last] & tail);
+        for (int w = first + 1; w < last; w++) {
+            count += Long.bitCount(words[w]);
+        }
+        return count;
+    }
+
+    /**
+     * [from, to) 范围内全部比特的异或（奇偶校验）
+     */
+    int parity(long from, long to) {
+        return popcount(from, to) & 1;
+    }
+
+    /**
+     * 把 src 中从 srcPos 开始的 n 个比特复制到 dst 的 dstPos 处，每次复制 64 个比特。
+     * src 与 dst 可以是同一个缓冲区，范围重叠时结果与先整段读出再写入相同。
+     */
+    static void copy(BitBuffer src, long srcPos, BitBuffer dst, long dstPos, long n) {
+        if (src == dst && dstPos > srcPos && dstPos < srcPos + n) {
+            // 向后重叠时从末尾开始复制
+            for (long done = n; done > 0; ) {
+                final int k = (int) Math.min(64, done);
+                done -= k;
+                dst.put(dstPos + done, k, src.get(srcPos + done, k));
+            }
+            return;
+        }
+        for (long done = 0; done < n; ) {
+            final int k = (int) Math.min(64, n - done);
+            dst.put(dstPos + done, k, src.get(srcPos + done, k));
+            done += k;
+        }
+    }
+
+    /**
+     * 8×8 比特矩阵转置，每个字节为一行，高位字节为第 0 行，字节内高位为第 0 列。
+     * 参考：Hacker's Delight, 7-3 "Transposing a Bit Matrix"
+     */
+    static long transpose8x8(long x) {
+        long t;
+        t = (x ^ (x >>> 7)) & 0x00AA00AA00AA00AAL;
+        x = x ^ t ^ (t << 7);
+        t = (x ^ (x >>> 14)) & 0x0000CCCC0000CCCCL;
+        x = x ^ t ^ (t << 14);
+        t = (x ^ (x >>> 28)) & 0x00000000F0F0F0F0L;
+        x = x ^ t ^ (t << 28);
+        return x;
+    }
+
+    private interface WordOp {
+        void apply(int word, long mask);
+    }
+
+    private static void forRange(long from, long to, WordOp op) {
+        if (from >= to) {
+            return;
+        }
+        final int first = (int) (from >>> 6);
+        final int last = (int) ((to - 1) >>> 6);
+        final long head = -1L >>> (from & 63);
+        final long tail = -1L << (63 - ((to - 1) & 63));
+        if (first == last) {
+            op.apply(first, head & tail);
+            return;
+        }
+        op.apply(first, head);
+        for (int w = first + 1; w < last; w++) {
+            op.apply(w, -1L);
+        }
+        op.apply(last, tail);
+    }
+
+}
@@ -0,0 +1,244 @@
+package fun.yanwk.playground.hamming;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+
+/**
+ * 比特切片（bit-sliced）汉明码编解码引擎
+ *
+ * @author YAN Wenkun
+ * 分组交织后的传输块，本身就是若干组码块的“转置”：
+ * 第 j 个交织单元（groupsPerInterleaving 个比特）恰好是所有码块的第 j 号比特。
+ * 因此可以把一个 long 看作“一个比特位置上的 64 组码块”，一次异或即完成 64 组码块的校验运算，
+ * 输出时直接按大端序写出，交织这一步几乎就消失了。
+ * 仅支持交织组数量为 8、16、32、64 的配置，输出与 {@link Encoder} / {@link Decoder} 逐字节一致。
+ * 码块大小与数据位地址表取自 {@link CodecPlan}，与传统布局的 {@link LinearCode#hamming(int)} 完全相同。
+ */
+class BitSlicedCodec {
+
+    /**
+     * 判断某种交织配置能否使用本引擎
+     */
+    public static boolean supports(int groupsPerInterleaving) {
+        return groupsPerInterleaving == 8 || groupsPerInterleaving == 16
+            || groupsPerInterleaving == 32 || groupsPerInterleaving == 64;
+    }
+
+    /**
+     * 与 {@link Encoder#encodeStream} 等价的比特切片实现。
+     *
+     * @param dataPerBlock          每组码块中有效数据的长度，单位字节
+     * @param groupsPerInterleaving 交织组数量，只能为 8、16、32、64
+     */
+    public static void encodeStream(
+        InputStream in,
+        OutputStream out,
+        int dataPerBlock,
+        int groupsPerInterleaving
+    ) throws IOException {
+        checkGroups(groupsPerInterleaving);
+
+        final CodecPlan plan = CodecPlan.of(StreamHeader.Layout.POSITIONAL, dataPerBlock, groupsPerInterleaving);
+        final int codeSize = plan.codeSize;
+        final int[] dataPositions = plan.dataPositions();
+        final int readSize = dataPerBlock * groupsPerInterleaving;
+
+        // 缓冲区在整个流中复用
+        final byte[] data = new byte[readSize];
+        final byte[] encoded = new byte[codeSize * groupsPerInterleaving];
+        final long[] slices = new long[codeSize * 8];
+
+        while (in.available() > 0) {
+            int n = in.readNBytes(data, 0, readSize);
+            if (n == 0) {
+                break;
+            }
+            Arrays.fill(data, n, readSize, (byte) 0); // 末尾不足一套传输块的部分以 0 填充
+
+            encodeTransmissionBlock(data, encoded, slices, dataPositions, dataPerBlock, groupsPerInterleaving);
+            out.write(encoded);
+        }
+    }
+
+    /**
+     * 与 {@link Decoder#decodeStream} 等价的比特切片实现。
+     *
+     * @param encoderDataPerBlock          编码器中设置的每组汉明码的有效数据长度，单位字节
+     * @param encoderGroupsPerInterleaving 编码器中设置的交织组数量，只能为 8、16、32、64
+     */
+    public static void decodeStream(
+        InputStream in,
+        OutputStream out,
+        int encoderDataPerBlock,
+        int encoderGroupsPerInterleaving
+    ) throws IOException {
+        checkGroups(encoderGroupsPerInterleaving);
+
+        final CodecPlan plan = CodecPlan.of(StreamHeader.Layout.POSITIONAL, encoderDataPerBlock, encoderGroupsPerInterleaving);
+        final int codeSize = plan.codeSize;
+        final int[] dataPositions = plan.dataPositions();
+        final int readSize = codeSize * encoderGroupsPerInterleaving;
+
+        final byte[] buffer = new byte[readSize];
+        final byte[] decoded = new byte[encoderDataPerBlock * encoderGroupsPerInterleaving];
+        final long[] slices = new long[codeSize * 8];
+
+        while (in.available() > 0) {
+            // 与 Decoder 相同，不考虑数据长度不对齐的情况；但不足一套传输块时须以 0 补齐，不能残留上一套的数据
+            int n = in.readNBytes(buffer, 0, readSize);
+            if (n == 0) {
+                break;
+            }
+            Arrays.fill(buffer, n, readSize, (byte) 0);
+            decodeTransmissionBlock(buffer, decoded, slices, dataPositions, encoderDataPerBlock, encoderGroupsPerInterleaving);
+            out.write(decoded);
+        }
+    }
+
+    /**
+     * 编码一套传输块：groups 组有效数据 → 已交织的传输块。
+     *
+     * @param data    groups × dataPerBlock 字节的有效数据，第 i 组码块的数据位于 [i × dataPerBlock, (i+1) × dataPerBlock)
+     * @param encoded 输出，codeSize × groups 字节
+     * @param slices  工作区，长度为 codeSize × 8，每个元素对应码块中的一个比特位置
+     */
+    protected static void encodeTransmissionBlock(
+        byte[] data, byte[] encoded, long[] slices, int[] dataPositions, int dataPerBlock, int groups
+    ) {
+        Arrays.fill(slices, 0L);
+
+        // 1、把数据转置为切片，填入数据位
+        for (int b = 0; b < dataPerBlock; b++) {
+            for (int c = 0; c < groups / 8; c++) {
+                long x = 0;
+                for (int t = 0; t < 8; t++) {
+                    x = (x << 8) | (data[(c * 8 + t) * dataPerBlock + b] & 0xFF);
+                }
+                x = BitBuffer.transpose8x8(x);
+                final int shift = (groups / 8 - 1 - c) * 8;
+                for (int r = 0; r < 8; r++) {
+                    slices[dataPositions[b * 8 + r]] |= ((x >>> (56 - r * 8)) & 0xFF) << shift;
+                }
+            }
+        }
+
+        // 2、校验位：对地址中第 bitwise 位为 1 的数据切片做异或；扩展校验位：对其余全部切片做异或
+        long extParity = 0;
+        for (int p : dataPositions) {
+            final long v = slices[p];
+            extParity ^= v;
+            for (int bits = p; bits != 0; bits &= bits - 1) {
+                slices[Integer.lowestOneBit(bits)] ^= v;
+            }
+        }
+        for (int parityBitAddr = 1; parityBitAddr < slices.length; parityBitAddr <<= 1) {
+            extParity ^= slices[parityBitAddr];
+        }
+        slices[0] = extParity;
+
+        // 3、每个切片即是一个交织单元，按大端序写出
+        writeSlices(slices, encoded, groups);
+        Telemetry.block(data.length, encoded.length);
+    }
+
+    /**
+     * 纠错并解码一套传输块：已交织的传输块 → groups 组有效数据。
+     * 出错判断规则与 {@link Decoder#hammingCorrectOneBlock} 相同。
+     *
+     * @throws StreamCorruptedException 任意一组码块出现两位比特错误
+     */
+    protected static void decodeTransmissionBlock(
+        byte[] encoded, byte[] decoded, long[] slices, int[] dataPositions, int dataPerBlock, int groups
+    ) throws StreamCorruptedException {
+        readSlices(encoded, slices, groups);
+
+        // 1、计算校验子（每个比特位置一条切片）与总奇偶校验
+        final int syndromeBits = Integer.SIZE - Integer.numberOfLeadingZeros(slices.length - 1);
+        final long[] syndrome = new long[syndromeBits];
+        long parityCheck = slices[0];
+        for (int p = 1; p < slices.length; p++) {
+            final long v = slices[p];
+            parityCheck ^= v;
+            for (int bits = p; bits != 0; bits &= bits - 1) {
+                syndrome[Integer.numberOfTrailingZeros(bits)] ^= v;
+            }
+        }
+
+        long anyError = 0;
+        for (long s : syndrome) {
+            anyError |= s;
+        }
+
+        // 2、地址不为 0 而总校验为偶：两位比特出错
+        if ((anyError & ~parityCheck) != 0) {
+            Telemetry.correction(-1);
+            throw new StreamCorruptedException("在一组编码中出现两位比特错误，无法纠错！");
+        }
+
+        // 3、一位比特出错：只需纠正数据位，校验位不参与输出
+        final long singleError = anyError & parityCheck;
+        if (singleError != 0) {
+            int dataHits = 0;
+            for (int p : dataPositions) {
+                long hit = singleError;
+                for (int b = 0; b < syndromeBits && hit != 0; b++) {
+                    hit &= ((p >>> b) & 1) == 1 ? syndrome[b] : ~syndrome[b];
+                }
+                slices[p] ^= hit;
+                for (; hit != 0; hit &= hit - 1) {
+                    Telemetry.correction(p);
+                    dataHits++;
+                }
+            }
+            // 校验位上的单比特错误不影响输出，只计数
+            Telemetry.STATS.correctedBits.add(Long.bitCount(singleError) - dataHits);
+        }
+
+        // 4、把数据切片转置回字节
+        for (int b = 0; b < dataPerBlock; b++) {
+            for (int c = 0; c < groups / 8; c++) {
+                final int shift = (groups / 8 - 1 - c) * 8;
+                long x = 0;
+                for (int r = 0; r < 8; r++) {
+                    x = (x << 8) | ((slices[dataPositions[b * 8 + r]] >>> shift) & 0xFF);
+                }
+                x = BitBuffer.transpose8x8(x);
+                for (int t = 0; t < 8; t++) {
+                    decoded[(c * 8 + t) * dataPerBlock + b] = (byte) (x >>> (56 - t * 8));
+                }
+            }
+        }
+        Telemetry.block(encoded.length, decoded.length);
+    }
+
+    private static void writeSlices(long[] slices, byte[] target, int groups) {
+        final int width = groups / 8;
+        for (int j = 0; j < slices.length; j++) {
+            final long v = slices[j];
+            for (int k = 0; k < width; k++) {
+                target[j * width + k] = (byte) (v >>> ((width - 1 - k) * 8));
+            }
+        }
+    }
+
+    private static void readSlices(byte[] source, long[] slices, int groups) {
+        final int width = groups / 8;
+        for (int j = 0; j < slices.length; j++) {
+            long v = 0;
+            for (int k = 0; k < width; k++) {
+                v = (v << 8) | (source[j * width + k] & 0xFF);
+            }
+            slices[j] = v;
+        }
+    }
+
+    private static void checkGroups(int groupsPerInterleaving) {
+        if (!supports(groupsPerInterleaving)) {
+            throw new IllegalArgumentException("比特切片引擎仅支持 8、16、32、64 组交织！");
+        }
+    }
+
+}
@@ -0,0 +1,203 @@
+package fun.yanwk.playground.hamming;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * 非阻塞的通道编解码器
+ *
+ * @author YAN Wenkun
+ * {@link Encoder#encodeStream} 依赖 in.available() 与阻塞流，无法挂在 Selector 驱动的 SocketChannel 上。
+ * 本类采用“推”的方式：调用者每次读到多少字节就交给 {@link #feed} 多少字节，
+ * 不足一套传输块的部分在内部缓存，凑满后立即编码（或解码），结果放入待写缓冲区，再由 {@link #flushTo} 写往输出通道。
+ * 输出通道写不动时（非阻塞通道 write 返回 0），待写缓冲区会逐渐填满，此时 feed 不再接收输入（返回 0），
+ * 调用者应暂停读取，改为关注输出通道的 OP_WRITE，从而把背压传递回输入端。
+ * 待写缓冲区中的字节计入 JMX 的排队字节数；连接结束（或放弃）时应调用 {@link #close} 归还。
+ * 实例有状态，不可在多个线程间共享。
+ */
+class ChannelCodec implements AutoCloseable {
+
+    /**
+     * 工作模式
+     */
+    enum Mode {
+        // 输入有效数据，输出交织后的传输块
+        ENCODE,
+        // 输入交织后的传输块，输出有效数据
+        DECODE
+    }
+
+    private final Mode mode;
+    private final SpecializedCodec codec;
+
+    // 一次处理的输入、输出单元大小（一套传输块）
+    private final int inUnit;
+    private final int outUnit;
+
+    // 未凑满一套传输块的输入
+    private final byte[] inBlock;
+    private int inFill = 0;
+    // 编解码的输出工作区
+    private final byte[] work;
+    private final SpecializedCodec.Scratch scratch;
+    // 待写往输出通道的数据，始终处于“写入”状态（position 为已写入的末尾）
+    private final ByteBuffer pending;
+
+    private long blocks = 0;
+    private boolean finished = false;
+
+    /**
+     * @param plan             编码参数，特化编解码器取自其缓存，多个连接共用同一份下标表
+     * @param maxPendingBlocks 待写缓冲区最多容纳多少套传输块，超过后 feed 不再接收输入
+     */
+    ChannelCodec(Mode mode, CodecPlan plan, int maxPendingBlocks) {
+        if (maxPendingBlocks < 1) {
+            throw new IllegalArgumentException("待写缓冲区至少容纳一套传输块！");
+        }
+        this.mode = mode;
+        this.codec = plan.codec();
+
+        final int plainSize = codec.plainSize();
+        final int encodedSize = codec.encodedSize();
+        this.inUnit = mode == Mode.ENCODE ? plainSize : encodedSize;
+        this.outUnit = mode == Mode.ENCODE ? encodedSize : plainSize;
+
+        this.inBlock = new byte[inUnit];
+        this.work = new byte[mode == Mode.ENCODE ? encodedSize : plainSize];
+        this.scratch = codec.scratch();
+        this.pending = ByteBuffer.allocate(outUnit * maxPendingBlocks);
+    }
+
+    /**
+     * 交给编解码器一段输入（可以是任意长度，包括不足一套传输块）。
+     *
+     * @param src 读取模式的缓冲区，被接收的字节会推进其 position
+     * @return 实际接收的字节数；待写缓冲区已满时可能为 0
+     * @throws StreamCorruptedException 解码时出现无法纠错的码块；此时编解码器已关闭，待写数据被丢弃
+     * @throws IllegalStateException    已调用 {@link #finish} 或 {@link #close} 后仍交给非空的输入；空输入总是直接返回 0
+     */
+    int feed(ByteBuffer src) throws StreamCorruptedException {
+        if (!src.hasRemaining()) {
+            return 0;
+        }
+        if (finished) {
+            throw new IllegalStateException("编解码器已结束，不能再接收输入！");
+        }
+        int accepted = 0;
+        while (src.hasRemaining() && pending.remaining() >= outUnit) {
+            final int n = Math.min(src.remaining(), inUnit - inFill);
+            src.get(inBlock, inFill, n);
+            inFill += n;
+            accepted += n;
+            if (inFill == inUnit) {
+                try {
+                    processBlock();
+                } catch (StreamCorruptedException e) {
+                    close();
+                    throw e;
+                }
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * 输入结束。编码时，将不足一套传输块的剩余输入以 0 填充后编码；
+     * 解码时，剩余输入必然不完整，直接丢弃（与 {@link Decoder#decodeStream} 一样不考虑不对齐的情况）。
+     *
+     * @return 待写缓冲区是否有足够空间完成收尾；为 false 时应先 flushTo 再重试
+     */
+    boolean finish() {
+        if (finished) {
+            return true;
+        }
+        if (mode == Mode.ENCODE && inFill > 0) {
+            if (pending.remaining() < outUnit) {
+                return false;
+            }
+            Arrays.fill(inBlock, inFill, inUnit, (byte) 0);
+            inFill = inUnit;
+            try {
+                processBlock();
+            } catch (StreamCorruptedException e) {
+                throw new IllegalStateException(e); // 编码不会抛出该异常
+            }
+        }
+        inFill = 0;
+        finished = true;
+        return true;
+    }
+
+    /**
+     * 尽可能多地把待写数据写往输出通道。非阻塞通道写满时立即返回。
+     *
+     * @return 待写数据是否已全部写出
+     */
+    boolean flushTo(WritableByteChannel out) throws IOException {
+        pending.flip();
+        final int before = pending.remaining();
+        try {
+            while (pending.hasRemaining()) {
+                if (out.write(pending) == 0) {
+                    break;
+                }
+            }
+            return !pending.hasRemaining();
+        } finally {
+            Telemetry.STATS.queuedBytes.add(pending.remaining() - before);
+            pending.compact();
+        }
+    }
+
+    /**
+     * 丢弃尚未写出的数据并结束，归还其在排队字节数中的计数。可重复调用；已全部写出后调用则只是结束
+     */
+    @Override
+    public void close() {
+        Telemetry.STATS.queuedBytes.add(-pending.position());
+        pending.clear();
+        inFill = 0;
+        finished = true;
+    }
+
+    /**
+     * 待写缓冲区中还有多少字节
+     */
+    int pendingBytes() {
+        return pending.position();
+    }
+
+    /**
+     * 待写缓冲区是否还能接收一套传输块，即 feed 能否继续接收输入
+     */
+    boolean canAccept() {
+        return pending.remaining() >= outUnit;
+    }
+
+    /**
+     * 已处理的传输块数量
+     */
+    long blocks() {
+        return blocks;
+    }
+
+    boolean isFinished() {
+        return finished;
+    }
+
+    private void processBlock() throws StreamCorruptedException {
+        if (mode == Mode.ENCODE) {
+            pending.put(codec.encode(inBlock, work, scratch));
+        } else {
+            codec.decode(inBlock, work, scratch);
+            pending.put(work);
+        }
+        inFill = 0;
+        blocks++;
+        Telemetry.STATS.queuedBytes.add(outUnit);
+    }
+
+}
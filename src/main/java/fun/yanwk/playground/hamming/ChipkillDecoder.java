@@ -0,0 +1,210 @@
+package fun.yanwk.playground.hamming;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+
+/**
+ * 带“坏列”追踪的解码器（仿 Chipkill）
+ *
+ * @author YAN Wenkun
+ * 分组交织的矩阵中，第 j 列即是每组码块的第 j 号比特，对应到 ECC DRAM 就是“一个颗粒上的一根数据线”。
+ * 如果某一列持续损坏（例如卡在 0 或 1），普通解码器在该列出错的同时只要再有一位随机错误，就会抛出两位比特错误的异常。
+ * 本解码器统计每一列被纠错的次数，当某列在一个统计窗口内的出错率超过阈值时，将其标记为坏列，
+ * 此后把坏列视为位置已知的擦除（erasure）：SEC-DED 汉明码的最小距离为 4，
+ * 可以恢复至多 3 个擦除，或 1 个擦除加 1 个随机错误。
+ * 校验子由执行计划中的 {@link SpecializedCodec} 按比特切片一次算出整套传输块，
+ * 只有校验子不为 0 的码块才进入擦除恢复与统计，无错码块的额外开销只有一次计数器自增。
+ * 实例有状态，不可在多个线程间共享。
+ */
+class ChipkillDecoder {
+
+    // SEC-DED 汉明码最多能恢复的擦除数量（最小距离 - 1）
+    static final int MAX_ERASURES = 3;
+
+    private final LinearCode code;
+    private final SpecializedCodec codec;
+    private final SpecializedCodec.Scratch scratch;
+    private final int groups;
+    // 统计窗口，单位：码块
+    private final int window;
+    // 坏列判定阈值：窗口内该列出错的码块占比
+    private final double threshold;
+
+    // 当前窗口内每一列被纠错的次数
+    private final int[] errorCounts;
+    private int codewordsInWindow = 0;
+    // 已判定的坏列（按判定先后排列）
+    private int[] failedColumns = new int[0];
+    // 坏列子集的列异或值，下标为子集的位掩码
+    private int[] subsetSyndromes = {0};
+    private long correctedBits = 0;
+
+    /**
+     * 使用默认参数：统计窗口 4096 组码块，出错率超过 1/8 即判为坏列。
+     * 真正损坏的列对随机数据约有 1/2 的出错率，而随机噪音远低于此。
+     */
+    ChipkillDecoder(LinearCode code, int groupsPerInterleaving) {
+        this(code, groupsPerInterleaving, 4096, 0.125);
+    }
+
+    /**
+     * @param window    统计窗口，单位：码块
+     * @param threshold 坏列判定阈值，窗口内出错的码块占比
+     */
+    ChipkillDecoder(LinearCode code, int groupsPerInterleaving, int window, double threshold) {
+        this.code = code;
+        this.codec = CodecPlan.codec(code, groupsPerInterleaving);
+        this.scratch = codec.scratch();
+        this.groups = groupsPerInterleaving;
+        this.window = window;
+        this.threshold = threshold;
+        this.errorCounts = new int[code.codeSize() * 8];
+    }
+
+    /**
+     * 同 {@link Decoder#decodeStream(InputStream, OutputStream, LinearCode, int)}，但在解码过程中追踪并利用坏列。
+     */
+    public void decodeStream(InputStream in, OutputStream out) throws IOException {
+        final byte[] buffer = new byte[code.codeSize() * groups];
+        final byte[] decoded = new byte[code.dataSize() * groups];
+
+        while (in.available() > 0) {
+            final int n = in.readNBytes(buffer, 0, buffer.length);
+            if (n == 0) {
+                break;
+            }
+            // 不足一套传输块时以 0 补齐，不能残留上一套的数据
+            Arrays.fill(buffer, n, buffer.length, (byte) 0);
+            decodeTransmissionBlock(buffer, decoded);
+            out.write(decoded);
+        }
+    }
+
+    /**
+     * 反交织、纠错并解码一套传输块。
+     *
+     * @param buffer  一套传输块，groups × codeSize 字节，不会被修改
+     * @param decoded 输出，groups × dataSize 字节
+     */
+    protected void decodeTransmissionBlock(byte[] buffer, byte[] decoded) throws StreamCorruptedException {
+        var coding = Telemetry.beginStage(Telemetry.STAGE_CODE);
+        final int[] syndromes = codec.decodeUncorrected(buffer, decoded, scratch);
+
+        for (int m = 0; m < groups; m++) {
+            if (syndromes[m] != 0) {
+                correct(decoded, m, syndromes[m]);
+            }
+            if (++codewordsInWindow == window) {
+                closeWindow();
+            }
+        }
+        Telemetry.endStage(coding, decoded.length);
+        Telemetry.block(buffer.length, decoded.length);
+    }
+
+    /**
+     * 预先把已知损坏的列标记为坏列，例如条带文件缺失时该条带上的全部列，见 {@link StripedCodec}。
+     *
+     * @param addr 码块中的比特地址
+     */
+    void markErased(int addr) {
+        if (failedColumns.length >= MAX_ERASURES) {
+            throw new IllegalArgumentException("最多只能恢复 " + MAX_ERASURES + " 个擦除！");
+        }
+        markFailed(addr);
+    }
+
+    /**
+     * 已判定的坏列（码块中的比特地址）
+     */
+    int[] failedColumns() {
+        return failedColumns.clone();
+    }
+
+    /**
+     * 累计纠正的比特数（含擦除恢复）
+     */
+    long correctedBits() {
+        return correctedBits;
+    }
+
+    /**
+     * 按“翻转比特最少”的原则纠错：
+     * 1、只翻转若干坏列即可使校验子归零；
+     * 2、坏列不超过 1 个时，再允许一位随机错误。
+     * 只有信息比特出现在输出中，翻转由 {@link SpecializedCodec#flip} 完成。
+     *
+     * @param group 第几组码块
+     */
+    private void correct(byte[] decoded, int group, int syndrome) throws StreamCorruptedException {
+        final int subsets = subsetSyndromes.length;
+
+        for (int mask = 1; mask < subsets; mask++) {
+            if (subsetSyndromes[mask] == syndrome) {
+                flipColumns(decoded, group, mask);
+                return;
+            }
+        }
+
+        if (failedColumns.length <= 1) {
+            for (int mask = 0; mask < subsets; mask++) {
+                final int addr = code.errorPosition(syndrome ^ subsetSyndromes[mask]);
+                if (addr >= 0) {
+                    flipColumns(decoded, group, mask);
+                    codec.flip(decoded, group, addr);
+                    Telemetry.correction(addr);
+                    correctedBits++;
+                    errorCounts[addr]++;
+                    return;
+                }
+            }
+        }
+
+        Telemetry.correction(-1);
+        throw new StreamCorruptedException("在一组编码中出现两位比特错误，无法纠错！");
+    }
+
+    private void flipColumns(byte[] decoded, int group, int mask) {
+        for (int i = 0; i < failedColumns.length; i++) {
+            if ((mask & (1 << i)) != 0) {
+                codec.flip(decoded, group, failedColumns[i]);
+                Telemetry.correction(failedColumns[i]);
+                correctedBits++;
+            }
+        }
+    }
+
+    /**
+     * 统计窗口结束：出错率超过阈值的列判为坏列，随后清零计数
+     */
+    private void closeWindow() {
+        final int limit = (int) Math.ceil(window * threshold);
+        for (int addr = 0; addr < errorCounts.length; addr++) {
+            if (errorCounts[addr] >= limit && failedColumns.length < MAX_ERASURES && code.column(addr) != 0) {
+                markFailed(addr);
+            }
+        }
+        Arrays.fill(errorCounts, 0);
+        codewordsInWindow = 0;
+    }
+
+    private void markFailed(int addr) {
+        for (int f : failedColumns) {
+            if (f == addr) {
+                return;
+            }
+        }
+        failedColumns = Arrays.copyOf(failedColumns, failedColumns.length + 1);
+        failedColumns[failedColumns.length - 1] = addr;
+
+        subsetSyndromes = new int[1 << failedColumns.length];
+        for (int mask = 1; mask < subsetSyndromes.length; mask++) {
+            final int lowest = Integer.numberOfTrailingZeros(mask);
+            subsetSyndromes[mask] = subsetSyndromes[mask & (mask - 1)] ^ code.column(failedColumns[lowest]);
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package fun.yanwk.playground.hamming;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 一组编码参数的执行计划
+ *
+ * @author YAN Wenkun
+ * 布局、每组码块有效数据长度、交织组数量确定后，码块大小、校验位数量、数据位布局、
+ * 校验与校验子的掩码、交织下标等全部随之确定。本类集中保存这些派生值与表，由 {@link #of} 从全局缓存取得，
+ * 同一组参数在整个进程中只计算一次：简单的派生值在构造时算出；
+ * 较大的表（{@link LinearCode} 的校验表、{@link SpecializedCodec} 的下标表）在首次使用时才生成。
+ * 线性码只与布局和有效数据长度有关，交织组数量不同的执行计划共用同一个 {@link LinearCode}。
+ * 实例不可变（懒加载的表一经生成即不再改变），可在多个线程间共享。
+ */
+final class CodecPlan {
+
+    // 键为（布局，每组码块有效数据长度，交织组数量）
+    private static final ConcurrentHashMap<List<Object>, CodecPlan> PLANS = new ConcurrentHashMap<>();
+    // 键为（布局，每组码块有效数据长度）
+    private static final ConcurrentHashMap<List<Object>, LinearCode> CODES = new ConcurrentHashMap<>();
+
+    final StreamHeader.Layout layout;
+    final int dataPerBlock;
+    final int groupsPerInterleaving;
+    // 校验位数量（不含扩展校验位）
+    final int parityBits;
+    // 码块大小，单位字节
+    final int codeSize;
+
+    private volatile LinearCode code;
+    private volatile SpecializedCodec codec;
+    private volatile int[] dataPositions;
+
+    private CodecPlan(StreamHeader.Layout layout, int dataPerBlock, int groupsPerInterleaving) {
+        if (dataPerBlock <= 0 || groupsPerInterleaving <= 0) {
+            throw new IllegalArgumentException("有效数据长度与交织组数量须为正数！");
+        }
+        this.layout = layout;
+        this.dataPerBlock = dataPerBlock;
+        this.groupsPerInterleaving = groupsPerInterleaving;
+        this.parityBits = LinearCode.hammingParityBits(dataPerBlock);
+        this.codeSize = LinearCode.hammingCodeSize(dataPerBlock);
+    }
+
+    /**
+     * 取得指定编码参数的执行计划，同一组参数总是返回同一个实例
+     */
+    static CodecPlan of(StreamHeader.Layout layout, int dataPerBlock, int groupsPerInterleaving) {
+        return PLANS.computeIfAbsent(List.of(layout, dataPerBlock, groupsPerInterleaving),
+            key -> new CodecPlan(layout, dataPerBlock, groupsPerInterleaving));
+    }
+
+    static CodecPlan of(StreamHeader header) {
+        return of(header.layout, header.dataPerBlock, header.groupsPerInterleaving);
+    }
+
+    /**
+     * 取得指定布局与有效数据长度的线性码，同一组参数总是返回同一个实例
+     */
+    static LinearCode code(StreamHeader.Layout layout, int dataPerBlock) {
+        return CODES.computeIfAbsent(List.of(layout, dataPerBlock), key -> layout == StreamHeader.Layout.SYSTEMATIC
+            ? LinearCode.systematicHamming(dataPerBlock)
+            : LinearCode.hamming(dataPerBlock));
+    }
+
+    /**
+     * 取得给定线性码与交织组数量的特化编解码器。
+     * 线性码若是由 {@link #code(StreamHeader.Layout, int)} 缓存的实例，返回对应执行计划中缓存的编解码器；
+     * 否则（调用者自行构造的线性码）现场构造一个，不放入缓存，以免缓存随任意实例无限增长。
+     */
+    static SpecializedCodec codec(LinearCode code, int groupsPerInterleaving) {
+        for (StreamHeader.Layout layout : StreamHeader.Layout.values()) {
+            if (CODES.get(List.of(layout, code.dataSize())) == code) {
+                return of(layout, code.dataSize(), groupsPerInterleaving).codec();
+            }
+        }
+        return new SpecializedCodec(code, groupsPerInterleaving);
+    }
+
+    /**
+     * 本计划的线性码，首次调用时生成（或取得与其他计划共用的实例）
+     */
+    LinearCode code() {
+        LinearCode c = code;
+        if (c == null) {
+            code = c = code(layout, dataPerBlock); // 由 CODES 保证唯一，重复赋值无害
+        }
+        return c;
+    }
+
+    /**
+     * 本计划线性码中信息比特的地址表，首次调用时生成，供 {@link BitSlicedCodec} 等按地址处理的引擎使用。
+     * 返回的是共享的表，调用者不得修改
+     */
+    int[] dataPositions() {
+        int[] p = dataPositions;
+        if (p == null) {
+            dataPositions = p = code().dataPositions(); // 内容由线性码决定，重复生成无害
+        }
+        return p;
+    }
+
+    /**
+     * 本计划的特化编解码器，首次调用时生成
+     */
+    SpecializedCodec codec() {
+        SpecializedCodec c = codec;
+        if (c == null) {
+            synchronized (this) {
+                c = codec;
+                if (c == null) {
+                    codec = c = new SpecializedCodec(code(), groupsPerInterleaving);
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * 一套传输块的有效数据大小，单位字节
+     */
+    int plainSize() {
+        return dataPerBlock * groupsPerInterleaving;
+    }
+
+    /**
+     * 一套传输块的大小，单位字节
+     */
+    int encodedSize() {
+        return codeSize * groupsPerInterleaving;
+    }
+
+}
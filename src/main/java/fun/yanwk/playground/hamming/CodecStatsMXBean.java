@@ -0,0 +1,67 @@
+package fun.yanwk.playground.hamming;
+
+/**
+ * 编解码器运行统计的 JMX 接口
+ *
+ * @author YAN Wenkun
+ * 注册名见 {@link Telemetry#OBJECT_NAME}。所有计数自进程启动（或上次 reset）起累计，全部编解码器实例共用。
+ */
+public interface CodecStatsMXBean {
+
+    /**
+     * 读入的字节数（编码时为有效数据，解码时为编码后数据）
+     */
+    long getBytesIn();
+
+    /**
+     * 写出的字节数
+     */
+    long getBytesOut();
+
+    /**
+     * 处理的传输块数量
+     */
+    long getBlocks();
+
+    /**
+     * 自计数起点以来，平均每秒处理的传输块数量。
+     * 只读，不同的监控客户端互不干扰；需要某段时间内的速率时，取两次 {@link #getBlocks} 与 {@link #getElapsedNanos} 之差相除
+     */
+    double getBlocksPerSecond();
+
+    /**
+     * 自计数起点（进程启动或上次 reset）以来经过的纳秒数，单调递增
+     */
+    long getElapsedNanos();
+
+    /**
+     * 纠正的比特数
+     */
+    long getCorrectedBits();
+
+    /**
+     * 无法纠错的码块数量
+     */
+    long getUncorrectableBlocks();
+
+    /**
+     * CRC 校验失败的超级块数量
+     */
+    long getChecksumFailures();
+
+    /**
+     * 干扰器翻转的比特数
+     */
+    long getJammedBits();
+
+    /**
+     * 当前排队等待写出的字节数（{@link ChannelCodec} 的待写缓冲区与 {@link StripedCodec} 各条带的写出队列）
+     */
+    long getQueuedBytes();
+
+    /**
+     * 清零全部累计计数，并以当前时刻为新的计数起点
+     */
+    void reset();
+
+}
@@ -4,6 +4,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
 
 /**
  * 汉明码解码器
@@ -32,43 +34,208 @@ class Decoder {
         int encoderGroupsPerInterleaving
     ) throws IOException {
 
+        decodeStream(in, out, CodecPlan.of(StreamHeader.Layout.POSITIONAL, encoderDataPerBlock, encoderGroupsPerInterleaving).codec());
+    }
+
+    /**
+     * 对输入数据进行分组交织的反交织，并使用任意线性分组码进行纠错、解码。
+     *
+     * @param code                         编码器使用的线性分组码
+     * @param encoderGroupsPerInterleaving 编码器中设置的交织组数量
+     */
+    public static void decodeStream(
+        InputStream in,
+        OutputStream out,
+        LinearCode code,
+        int encoderGroupsPerInterleaving
+    ) throws IOException {
+
+        decodeStream(in, out, CodecPlan.codec(code, encoderGroupsPerInterleaving));
+    }
+
+    private static void decodeStream(
+        InputStream in,
+        OutputStream out,
+        SpecializedCodec codec
+    ) throws IOException {
+
         // 解码器码块大小
         // 如使用 (72,64) 汉明码，则码块大小为 9 字节。详细计算公式见 Encoder 类
-        final int codeSize = (int) Math.ceil(4.5 + encoderDataPerBlock - Integer.numberOfLeadingZeros(encoderDataPerBlock) / 8.0);
+        final int codeSize = codec.code().codeSize();
         // 解码器反交织（分选、解交织，de-interleave）的分组数量
         // 因为分组交织等价于矩阵转置，再转置一次即得到原矩阵，因此反交织的过程就是再交织一次，但是分组数量取（一套传输块的比特大小÷编码时的分组数量）
-        // 如一套传输块为 72比特×8交织组=576比特，则分 576÷8=72组 进行反交织（等价于矩阵转置），化简后为：
-        final int groupsPerDeinterleaving = codeSize * 8;
+        // 如一套传输块为 72比特×8交织组=576比特，则分 576÷8=72组 进行反交织（等价于矩阵转置），化简后为 codeSize * 8，见 decodeTransmissionBlock
         // 一套传输块的大小，也是一次从输入流读取到缓冲区的大小
-        final int readSize = codeSize * encoderGroupsPerInterleaving;
+        final int readSize = codeSize * codec.groups();
+
+        final byte[] buffer = new byte[readSize];
+        final byte[] decoded = new byte[codec.plainSize()];
+        final SpecializedCodec.Scratch scratch = codec.scratch();
 
         while (in.available() > 0) {
             // 注意这里不考虑数据长度不对齐的情况，这种情况本来也无法正常解码。
-            byte[] buffer = new byte[readSize];
-            int i = in.read(buffer);
-            if (i == -1) {
+            var read = Telemetry.beginStage(Telemetry.STAGE_READ);
+            int i = in.readNBytes(buffer, 0, readSize);
+            Telemetry.endStage(read, i);
+            if (i == 0) {
                 break;
             }
-            // 得到反交织后的一套传输块（例如 72 字节）
-            byte[] deinterleaved = Encoder.blockInterleave(buffer, groupsPerDeinterleaving);
-
-            // 取传输块中的码块（一组汉明码，例如 9 字节）进行纠错、解码
-            for (int j = 0; j < deinterleaved.length; j += codeSize) {
-                byte[] block = new byte[codeSize];
-                System.arraycopy(deinterleaved, j, block, 0, block.length);
-
-                // 因为调用者已使用 BufferedOutputStream，这里不再重复使用缓冲区
-                out.write(
-                    hammingDecodeOneBlock(
-                        hammingCorrectOneBlock(block), encoderDataPerBlock
-                    )
-                );
+            // 不足一套传输块时以 0 补齐，不能残留上一套的数据
+            Arrays.fill(buffer, i, readSize, (byte) 0);
+            codec.decode(buffer, decoded, scratch);
+            // 因为调用者已使用 BufferedOutputStream，这里不再重复使用缓冲区
+            var write = Telemetry.beginStage(Telemetry.STAGE_WRITE);
+            out.write(decoded);
+            Telemetry.endStage(write, decoded.length);
+        }
+    }
+
+    /**
+     * 按文件头的设置解码输入数据。调用前须已用 {@link StreamHeader#read} 读过文件头。
+     * 若启用了 CRC 校验，则逐个超级块核对有效数据的 CRC32C：
+     * 三位及以上比特出错时汉明码会“乱纠错”，此时 CRC 不符。
+     * 与编码器一样缓存一个超级块：核对通过后才写出，校验失败时立即抛出异常，乱纠错的数据不会交给调用者；
+     * 此前已写出的超级块均已通过校验。
+     * 若为可追加的编码流，则按长度字输出，不含末尾填充的 0。
+     *
+     * @throws StreamCorruptedException 两位比特错误，或某个超级块 CRC 校验失败
+     */
+    public static void decodeStream(
+        InputStream in,
+        OutputStream out,
+        StreamHeader header
+    ) throws IOException {
+
+        final SpecializedCodec codec = header.plan().codec();
+        if (header.appendable) {
+            decodeWithLength(in, out, codec);
+            return;
+        }
+        if (header.blocksPerSuperblock == 0) {
+            decodeStream(in, out, codec);
+            return;
+        }
+
+        final byte[] checksum = new byte[StreamHeader.CHECKSUM_SIZE];
+        final byte[] buffer = new byte[codec.encodedSize()];
+        final int plainSize = codec.plainSize();
+        final byte[] decoded = new byte[plainSize];
+        final byte[] superblock = new byte[plainSize * header.blocksPerSuperblock];
+        final SpecializedCodec.Scratch scratch = codec.scratch();
+        final CRC32C crc = new CRC32C();
+
+        for (long index = 0; in.available() > 0; index++) {
+            if (in.readNBytes(checksum, 0, checksum.length) < checksum.length) {
+                throw new StreamCorruptedException("CRC 校验字不完整，数据可能被截断！");
+            }
+            int expected;
+            boolean readable = true;
+            try {
+                expected = StreamHeader.decodeChecksum(checksum);
+            } catch (StreamCorruptedException e) {
+                expected = 0;
+                readable = false; // 校验字本身损坏，该超级块无法核对
+            }
+
+            int blocks = 0;
+            while (blocks < header.blocksPerSuperblock && in.available() > 0) {
+                final int n = in.readNBytes(buffer, 0, buffer.length);
+                if (n == 0) {
+                    break;
+                }
+                // 不足一套传输块时以 0 补齐，不能残留上一套的数据
+                Arrays.fill(buffer, n, buffer.length, (byte) 0);
+                codec.decode(buffer, decoded, scratch);
+                System.arraycopy(decoded, 0, superblock, blocks * plainSize, plainSize);
+                blocks++;
+            }
+
+            crc.reset();
+            crc.update(superblock, 0, blocks * plainSize);
+            if (!readable || (int) crc.getValue() != expected) {
+                Telemetry.STATS.checksumFailures.increment();
+                out.flush();
+                throw new StreamCorruptedException("第 " + index + " 号超级块 CRC 校验失败（每块 " + header.blocksPerSuperblock
+                    + " 套传输块），数据不可信，已停止输出！");
             }
+            out.write(superblock, 0, blocks * plainSize);
         }
     }
 
     /**
-     * 汉明码纠错
+     * 解码可追加的编码流：先读长度字，再解码恰好能容纳该长度的传输块，末尾填充的 0 不输出。
+     */
+    private static void decodeWithLength(
+        InputStream in,
+        OutputStream out,
+        SpecializedCodec codec
+    ) throws IOException {
+
+        final byte[] word = in.readNBytes(StreamHeader.LENGTH_SIZE);
+        if (word.length < StreamHeader.LENGTH_SIZE) {
+            throw new StreamCorruptedException("长度字不完整，数据可能被截断！");
+        }
+        long remaining = StreamHeader.decodeLength(word);
+
+        final byte[] buffer = new byte[codec.encodedSize()];
+        final byte[] decoded = new byte[codec.plainSize()];
+        final SpecializedCodec.Scratch scratch = codec.scratch();
+        while (remaining > 0) {
+            if (in.readNBytes(buffer, 0, buffer.length) < buffer.length) {
+                throw new StreamCorruptedException("编码流比长度字记录的短，数据可能被截断！");
+            }
+            codec.decode(buffer, decoded, scratch);
+            final int n = (int) Math.min(remaining, decoded.length);
+            out.write(decoded, 0, n);
+            remaining -= n;
+        }
+    }
+
+    /**
+     * 反交织、纠错并解码一套传输块。
+     *
+     * @param buffer  一套传输块，groups × codeSize 字节，不会被修改
+     * @param decoded 输出，groups × dataSize 字节
+     */
+    protected static void decodeTransmissionBlock(
+        byte[] buffer,
+        LinearCode code,
+        int groups,
+        byte[] decoded
+    ) throws StreamCorruptedException {
+
+        final int codeSize = code.codeSize();
+        // 得到反交织后的一套传输块（例如 72 字节），反交织的分组数量见 decodeStream
+        var interleave = Telemetry.beginStage(Telemetry.STAGE_INTERLEAVE);
+        final BitBuffer deinterleaved = Encoder.blockInterleave(BitBuffer.of(buffer), codeSize * 8);
+        Telemetry.endStage(interleave, buffer.length);
+
+        // 取传输块中的码块（一组汉明码，例如 9 字节）原地纠错、解码
+        var coding = Telemetry.beginStage(Telemetry.STAGE_CODE);
+        final BitBuffer out = new BitBuffer(decoded.length * 8L);
+        final long codeBits = codeSize * 8L;
+        final long dataBits = code.dataSize() * 8L;
+        for (int m = 0; m < groups; m++) {
+            final int corrected;
+            try {
+                corrected = code.correct(deinterleaved, m * codeBits);
+            } catch (StreamCorruptedException e) {
+                Telemetry.correction(-1);
+                throw e;
+            }
+            if (corrected >= 0) {
+                Telemetry.correction(corrected);
+            }
+            code.decode(deinterleaved, m * codeBits, out, m * dataBits);
+        }
+        out.store(decoded, 0, decoded.length);
+        Telemetry.endStage(coding, decoded.length);
+
+        Telemetry.block(buffer.length, decoded.length);
+    }
+
+    /**
+     * 汉明码纠错（逐比特的参考实现，流式解码使用 {@link LinearCode#correct}）
      * 0 比特翻转：返回输入
      * 1 比特翻转：返回纠错后的正确数据
      * 2 比特翻转：报错，抛出异常
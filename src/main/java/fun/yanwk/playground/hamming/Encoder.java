@@ -1,8 +1,18 @@
 package fun.yanwk.playground.hamming;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
 
 /**
  * 汉明码编码器
@@ -45,30 +55,272 @@ class Encoder {
          * int codeSize = (int) Math.ceil(totalBits / 8.0)
          */
 
-        // 化简后的计算式
-        final int codeSize = (int) Math.ceil(4.5 + dataPerBlock - Integer.numberOfLeadingZeros(dataPerBlock) / 8.0);
-        final int writeSize = codeSize * groupsPerInterleaving;
+        // 化简后的计算式见 LinearCode.hamming()，逐比特的校验计算已在其中预先展开为校验行
+        encodeStream(in, out, CodecPlan.of(StreamHeader.Layout.POSITIONAL, dataPerBlock, groupsPerInterleaving).codec());
+    }
+
+    /**
+     * 使用任意线性分组码编码输入数据，并进行分组交织。
+     *
+     * @param code                  线性分组码，决定码块大小与比特布局
+     * @param groupsPerInterleaving 交织组数量
+     */
+    public static void encodeStream(
+        InputStream in,
+        OutputStream out,
+        LinearCode code,
+        int groupsPerInterleaving
+    ) throws IOException {
+
+        encodeStream(in, out, CodecPlan.codec(code, groupsPerInterleaving));
+    }
+
+    private static void encodeStream(
+        InputStream in,
+        OutputStream out,
+        SpecializedCodec codec
+    ) throws IOException {
+
+        // 缓冲区在整个流中复用
+        final byte[] plain = new byte[codec.plainSize()];
+        final byte[] encoded = new byte[codec.encodedSize()];
+        final SpecializedCodec.Scratch scratch = codec.scratch();
 
         while (in.available() > 0) {
-            byte[] encoded = new byte[writeSize];
+            byte[] block = encodeTransmissionBlock(in, codec, scratch, plain, encoded);
+
+            var write = Telemetry.beginStage(Telemetry.STAGE_WRITE);
+            out.write(block);
+            Telemetry.endStage(write, block.length);
+        }
+    }
+
+    /**
+     * 按文件头的设置编码输入数据：先写出文件头，再写出传输块。
+     * 若文件头要求 CRC 校验，则每个超级块（若干套传输块）之前写出一个校验字：
+     * 超级块全部有效数据（含末尾填充的 0）的 CRC32C，以 (39,32) 汉明码保护，共 5 字节。
+     * 校验字写在超级块之前，因此编码器需要缓存一个超级块，解码器则无需预读。
+     */
+    public static void encodeStream(
+        InputStream in,
+        OutputStream out,
+        StreamHeader header
+    ) throws IOException {
+
+        if (header.appendable) {
+            throw new IllegalArgumentException("可追加的编码流须使用 appendFile 生成！");
+        }
+        header.write(out);
+        final SpecializedCodec codec = header.plan().codec();
+        if (header.blocksPerSuperblock == 0) {
+            encodeStream(in, out, codec);
+            return;
+        }
+
+        final int writeSize = codec.encodedSize();
+        final byte[] plain = new byte[codec.plainSize()];
+        final byte[] encoded = new byte[writeSize];
+        final byte[] superblock = new byte[writeSize * header.blocksPerSuperblock];
+        final SpecializedCodec.Scratch scratch = codec.scratch();
+        final CRC32C crc = new CRC32C();
+
+        while (in.available() > 0) {
+            crc.reset();
+            int blocks = 0;
+            while (blocks < header.blocksPerSuperblock && in.available() > 0) {
+                byte[] block = encodeTransmissionBlock(in, codec, scratch, plain, encoded);
+                crc.update(plain);
+                System.arraycopy(block, 0, superblock, blocks * writeSize, writeSize);
+                blocks++;
+            }
+            var write = Telemetry.beginStage(Telemetry.STAGE_WRITE);
+            out.write(StreamHeader.encodeChecksum((int) crc.getValue()));
+            out.write(superblock, 0, blocks * writeSize);
+            Telemetry.endStage(write, StreamHeader.CHECKSUM_SIZE + blocks * writeSize);
+        }
+    }
+
+    /**
+     * 把输入数据追加编码到一个可追加的编码流文件末尾，文件不存在或为空时新建。
+     * 只有最后一套未填满的传输块需要重写：先按长度字找到它，解码取回其中的有效数据（顺带纠错），
+     * 接上新数据后重新编码写回原位，其后的数据照常编码，最后更新长度字。
+     * 因此每次追加的开销只与新数据的长度有关，与文件已有的长度无关。
+     * 重写的传输块中，旧数据的信息比特不变，但与新数据同处一组码块时该组的校验位会变；原地写到一半会使旧数据无法解码。
+     * 因此这一套传输块与 {@link RangeUpdater} 一样，先记入意图日志并落盘，再写回原位，写完后删除日志。
+     * 新数据与长度字依次落盘，若追加中途中断，旧的长度字仍然指向完好的旧数据，未完成的重写由日志重做。
+     *
+     * @param header 新建文件时使用的文件头，须为可追加的；文件已存在时以文件中的文件头为准
+     * @return 追加后有效数据的总长度
+     * @throws StreamCorruptedException 原有文件中最后一套传输块出现两位比特错误，或文件比长度字记录的短
+     */
+    public static long appendFile(
+        InputStream in,
+        Path file,
+        StreamHeader header
+    ) throws IOException {
+
+        RangeUpdater.recover(file); // 先完成中断的原地更新（若有）
+        // 先校验再打开：以 CREATE 打开后才报错，会留下一个空文件
+        if (!header.appendable && (Files.notExists(file) || Files.size(file) == 0)) {
+            throw new IllegalArgumentException("文件头须为可追加的！");
+        }
+        try (FileChannel channel = FileChannel.open(file,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            long length = 0;
+            if (channel.size() == 0) {
+                header.write(Channels.newOutputStream(channel.position(0)));
+                writeFully(channel, StreamHeader.encodeLength(0), StreamHeader.SIZE);
+            } else {
+                header = StreamHeader.read(new BufferedInputStream(Channels.newInputStream(channel.position(0))));
+                if (header == null || !header.appendable) {
+                    throw new IllegalArgumentException("该文件不是可追加的编码流！");
+                }
+                length = StreamHeader.decodeLength(readFully(channel, StreamHeader.LENGTH_SIZE, StreamHeader.SIZE));
+            }
 
-            for (int m = 0; m < groupsPerInterleaving; m++) {
-                byte[] buffer = new byte[dataPerBlock];
-                int i = in.read(buffer);
-                if (i == -1) {
+            final SpecializedCodec codec = header.plan().codec();
+            final int plainSize = codec.plainSize();
+            final int encodedSize = codec.encodedSize();
+            final byte[] plain = new byte[plainSize];
+            final byte[] encoded = new byte[encodedSize];
+            final SpecializedCodec.Scratch scratch = codec.scratch();
+
+            // 最后一套未填满的传输块（若有）的位置，以及其中已有的有效数据
+            long position = StreamHeader.SIZE + StreamHeader.LENGTH_SIZE + length / plainSize * encodedSize;
+            int fill = (int) (length % plainSize);
+            if (channel.size() < position + (fill > 0 ? encodedSize : 0)) {
+                throw new StreamCorruptedException("编码流比长度字记录的短，文件可能被截断！");
+            }
+            // 是否需要重写原有的最后一套传输块
+            boolean rewrite = fill > 0;
+            if (rewrite) {
+                codec.decode(readFully(channel, encodedSize, position), plain, scratch);
+            }
+
+            long appended = 0;
+            while (true) {
+                final int n = in.readNBytes(plain, fill, plainSize - fill);
+                if (n == 0) {
                     break;
+                }
+                fill += n;
+                appended += n;
+                Arrays.fill(plain, fill, plainSize, (byte) 0);
+
+                final byte[] block = codec.encode(plain, encoded, scratch);
+                if (rewrite) {
+                    final Path journal = RangeUpdater.journalOf(file);
+                    RangeUpdater.writeJournal(journal, position, block);
+                    writeFully(channel, block, position);
+                    channel.force(false);
+                    Files.delete(journal);
+                    rewrite = false;
                 } else {
-                    byte[] block = hammingEncodeOneBlock(buffer);
-                    System.arraycopy(block, 0, encoded, m * codeSize, block.length);
+                    writeFully(channel, block, position);
                 }
+                if (fill < plainSize) {
+                    break; // 输入已读完，末尾的传输块留待下次追加时重写
+                }
+                position += encodedSize;
+                fill = 0;
+            }
+
+            if (appended > 0) {
+                // 先落盘数据，再更新长度字
+                channel.force(false);
+                writeFully(channel, StreamHeader.encodeLength(length + appended), StreamHeader.SIZE);
+                channel.force(false);
             }
+            return length + appended;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, byte[] data, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
 
-            out.write(blockInterleave(encoded, groupsPerInterleaving));
+    private static byte[] readFully(FileChannel channel, int size, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new StreamCorruptedException("编码流比长度字记录的短，文件可能被截断！");
+            }
         }
+        return buffer.array();
+    }
+
+    /**
+     * 从输入流读取一套传输块的有效数据并编码、交织。
+     * 输入不足一套传输块时，余下部分以 0 填充。
+     *
+     * @param scratch codec 的工作区
+     * @param plain   工作区，groups × dataSize 字节。返回后存放本传输块的有效数据（含填充的 0）
+     * @param encoded 输出，groups × codeSize 字节
+     * @return 交织后的传输块，即 encoded 本身（下次调用时会被覆盖）
+     */
+    protected static byte[] encodeTransmissionBlock(
+        InputStream in,
+        SpecializedCodec codec,
+        SpecializedCodec.Scratch scratch,
+        byte[] plain,
+        byte[] encoded
+    ) throws IOException {
+
+        final int dataSize = codec.code().dataSize();
+        final int groups = codec.groups();
+        Arrays.fill(plain, (byte) 0);
+
+        var read = Telemetry.beginStage(Telemetry.STAGE_READ);
+        for (int m = 0; m < groups; m++) {
+            int i = in.read(plain, m * dataSize, dataSize);
+            if (i == -1) {
+                break;
+            }
+        }
+        Telemetry.endStage(read, plain.length);
+
+        return codec.encode(plain, encoded, scratch);
+    }
+
+    /**
+     * 编码并交织一套传输块。全 0 的有效数据编码后也是全 0，因此末尾的填充不需要特殊处理。
+     *
+     * @param plain   一套传输块的有效数据，groups × dataSize 字节
+     * @param encoded 输出，groups × codeSize 字节
+     * @return 交织后的传输块，即 encoded 本身（下次调用时会被覆盖）
+     */
+    protected static byte[] encodeTransmissionBlock(
+        byte[] plain,
+        LinearCode code,
+        int groups,
+        byte[] encoded
+    ) {
+
+        var coding = Telemetry.beginStage(Telemetry.STAGE_CODE);
+        final BitBuffer data = BitBuffer.of(plain);
+        final BitBuffer codewords = new BitBuffer(encoded.length * 8L);
+        final long dataBits = code.dataSize() * 8L;
+        final long codeBits = code.codeSize() * 8L;
+        for (int m = 0; m < groups; m++) {
+            code.encode(data, m * dataBits, codewords, m * codeBits);
+        }
+        Telemetry.endStage(coding, plain.length);
+
+        var interleave = Telemetry.beginStage(Telemetry.STAGE_INTERLEAVE);
+        blockInterleave(codewords, groups).store(encoded, 0, encoded.length);
+        Telemetry.endStage(interleave, encoded.length);
+
+        Telemetry.block(plain.length, encoded.length);
+        return encoded;
     }
 
     /**
      * 使用 SEC-DED 汉明码，编码一段数据（若干字节）。
+     * 逐比特的参考实现，流式编码使用 {@link LinearCode#hamming(int)}，两者输出一致。
      * 根据输入数据长度，自动调整输出数据块大小。
      * 最小编码为 (13,8) 汉明码（输出占用两字节）。
      */
@@ -144,22 +396,37 @@ class Encoder {
         if ((source.length * 8) % groups != 0) {
             throw new IndexOutOfBoundsException("分组数量与数据长度不对齐！请确保整除关系！");
         }
+        return blockInterleave(BitBuffer.of(source), groups).toByteArray();
+    }
 
-        final int oneBlockSize = (source.length * 8) / groups;
+    /**
+     * 同 {@link #blockInterleave(byte[], int)}，在比特缓冲区上进行。
+     * 分组交织等价于矩阵转置：源数据为 groups 行 × oneBlockSize 列（按行存放）的比特矩阵，
+     * 按 8×8 的小块整块读出、转置后整块写入，每次处理 64 个比特，不再逐比特复制。
+     */
+    protected static BitBuffer blockInterleave(final BitBuffer source, int groups) {
+        if (source.size() % groups != 0) {
+            throw new IndexOutOfBoundsException("分组数量与数据长度不对齐！请确保整除关系！");
+        }
 
-        // 分组交织 等价于 矩阵转置
-        byte[] result = new byte[source.length];
-        for (int i = 0; i < groups; i++) {
-            for (int j = 0; j < oneBlockSize; j++) {
-                int sourceBitAddr = i * oneBlockSize + j;
-                byte sourceByte = source[sourceBitAddr / 8];
-                int sourceBitIndex = 7 - (sourceBitAddr % 8);
+        final int oneBlockSize = (int) (source.size() / groups);
 
-                int targetBitAddr = j * groups + i;
-                byte targetByte = result[targetBitAddr / 8];
-                int targetBitIndex = 7 - (targetBitAddr % 8);
+        BitBuffer result = new BitBuffer(source.size());
+        for (int i = 0; i < groups; i += 8) {
+            final int h = Math.min(8, groups - i); // 本小块的行数
+            for (int j = 0; j < oneBlockSize; j += 8) {
+                final int w = Math.min(8, oneBlockSize - j); // 本小块的列数
 
-                result[targetBitAddr / 8] = Utils.copyBit(sourceByte, sourceBitIndex, targetByte, targetBitIndex);
+                // 第 i + r 行的 w 个比特，左对齐放入 x 的第 r 个字节
+                long x = 0;
+                for (int r = 0; r < h; r++) {
+                    x |= (source.get((long) (i + r) * oneBlockSize + j, w) << (8 - w)) << (56 - r * 8);
+                }
+                x = BitBuffer.transpose8x8(x);
+                // 转置后第 c 个字节的高 h 位，即是目标矩阵第 j + c 行的 h 个比特
+                for (int c = 0; c < w; c++) {
+                    result.put((long) (j + c) * groups + i, h, x >>> (64 - c * 8 - h));
+                }
             }
         }
 
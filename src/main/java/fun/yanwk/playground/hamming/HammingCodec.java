@@ -3,6 +3,9 @@ package fun.yanwk.playground.hamming;
 import org.apache.commons.cli.*;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 
 /*
  * 在学习汉明码后尝试写的编解码器（玩具级别）。
@@ -42,6 +45,10 @@ public class HammingCodec {
     // 干扰器最大连续干扰（翻转比特）数，如超过分组交织数则可能无法纠错
     private static final int JAMMER_MAX_BURST = 8;
 
+    // 仿真模式遍历的噪音参数，编码参数取 Tuner 的候选值
+    private static final double[] SIMULATOR_PROBABILITIES = {1e-3, 1e-4, 1e-5, 1e-6};
+    private static final int[] SIMULATOR_MAX_BURSTS = {1, 8, 16};
+
     /**
      * 利用 Apache Commons CLI 处理命令行输入参数的逻辑
      * 但是这个库实在太老了，只是拿来练练手，新的项目建议用： https://github.com/remkop/picocli
@@ -73,12 +80,85 @@ public class HammingCodec {
             .desc("干扰模式")
             .build();
 
+        Option appendMode = Option.builder("a")
+            .longOpt("append")
+            .numberOfArgs(2)
+            .argName("inputFile> <outputFile")
+            .desc("追加编码模式：把输入追加编码到可追加的编码流末尾，输出文件不存在时新建。输出带文件头")
+            .build();
+
+        Option updateMode = Option.builder("u")
+            .longOpt("update")
+            .numberOfArgs(3)
+            .argName("encodedFile> <offset> <patchFile")
+            .desc("原地更新模式：用 patchFile 的内容替换编码文件中从 offset 字节开始的有效数据，只重写涉及的传输块")
+            .build();
+
+        Option simulateMode = Option.builder("S")
+            .longOpt("simulate")
+            .numberOfArgs(2)
+            .argName("blocks> <csvFile")
+            .desc("仿真模式：在内存中对各种噪音参数与编码参数的组合各仿真 blocks 套传输块，结果输出为 CSV")
+            .build();
+
         modes.addOption(encoderMode)
+            .addOption(appendMode)
+            .addOption(updateMode)
+            .addOption(simulateMode)
             .addOption(decoderMode)
             .addOption(distortionMode);
 
-        modes.setRequired(true);
-        options.addOptionGroup(modes);
+        options.addOptionGroup(modes); // 模式必选，但单独使用 --tune 时除外，见阶段 2
+
+        options.addOption(Option.builder("E")
+            .longOpt("engine")
+            .hasArg()
+            .argName("scalar|bitsliced")
+            .desc("编解码引擎，默认 scalar。bitsliced 仅支持 8、16、32、64 组交织，编码时只能输出不带文件头的旧版格式")
+            .build());
+
+        options.addOption("s", "systematic", false,
+            "编码时使用系统布局（每组码块内数据在前、校验在后）。纠错能力与速度均与默认布局相同，输出带文件头，旧版解码器无法识别");
+
+        options.addOption(Option.builder("c")
+            .longOpt("crc")
+            .hasArg()
+            .argName("blocks")
+            .desc("编码时每隔若干套传输块计算一次 CRC32C，用于发现三位及以上比特错误导致的乱纠错。输出带文件头")
+            .build());
+
+        options.addOption("k", "chipkill", false,
+            "解码时追踪各列的出错率，将持续损坏的列视为擦除进行恢复（仿 Chipkill）");
+
+        options.addOption(Option.builder("t")
+            .longOpt("tune")
+            .hasArg()
+            .argName("targetRate")
+            .desc("按干扰器的噪音参数自动调优码块大小与交织深度，targetRate 为每字节可接受的残余失败率。"
+                + "单独使用时只给出推荐；与编码模式同用时直接采用推荐值编码，输出带文件头")
+            .build());
+
+        options.addOption(Option.builder("n")
+            .longOpt("noise")
+            .hasArg()
+            .argName("encodedFile")
+            .desc("与 -t 同用：从一份收到的（可能受过干扰的）编码文件中统计噪音模型，代替干扰器的默认参数")
+            .build());
+
+        options.addOption(Option.builder("r")
+            .longOpt("seed")
+            .hasArg()
+            .argName("seed")
+            .desc("与仿真模式同用：随机数种子，用于复现某次仿真；省略时随机选取。所用的种子会打印出来并写入 CSV 的 seed 列")
+            .build());
+
+        options.addOption(Option.builder("p")
+            .longOpt("stripes")
+            .hasArg()
+            .argName("count")
+            .desc("与编码、解码模式同用：按列把编码数据分散到 count 个条带文件（输出文件名后加 .0、.1 …），"
+                + "解码时可容忍一个条带缺失（须每个条带在一组码块中不超过 3 列）")
+            .build());
 
         options.addOption("h", "help", false, "显示本帮助");
 
@@ -92,14 +172,189 @@ public class HammingCodec {
             formatter.printHelp("hamming-codec.jar", options);
             return;
         }
+        if (!cmd.hasOption("e") && !cmd.hasOption("a") && !cmd.hasOption("u") && !cmd.hasOption("S")
+            && !cmd.hasOption("d") && !cmd.hasOption("x") && !cmd.hasOption("t")) {
+            formatter.printHelp("hamming-codec.jar", options);
+            return;
+        }
+
+        // 自动调优：单独使用时给出推荐后退出，与编码模式同用时采用推荐值。
+        // 解码、干扰、原地更新与仿真的参数由输入决定或另有设置，调优结果用不上，与其默默忽略不如直接报错
+        int dataPerBlock = ENCODER_DATA_PER_BLOCK;
+        int groupsPerInterleaving = ENCODER_GROUPS_PER_INTERLEAVING;
+        if (cmd.hasOption("t")
+            && (cmd.hasOption("d") || cmd.hasOption("x") || cmd.hasOption("u") || cmd.hasOption("S"))) {
+            System.out.println("参数错误：-t 只能单独使用，或与编码模式（-e、-a）同用！");
+            formatter.printHelp("hamming-codec.jar", options);
+            return;
+        }
+        if (cmd.hasOption("r") && !cmd.hasOption("S")) {
+            System.out.println("参数错误：-r 只能与仿真模式（-S）同用！");
+            formatter.printHelp("hamming-codec.jar", options);
+            return;
+        }
+        if (cmd.hasOption("n") && !cmd.hasOption("t")) {
+            System.out.println("参数错误：-n 只能与 -t 同用！");
+            formatter.printHelp("hamming-codec.jar", options);
+            return;
+        }
+        // 比特切片引擎只编码旧版格式，带文件头的编码（-s、-c、-t）会默默改用标量引擎，不如直接报错
+        if (cmd.hasOption("e") && cmd.getOptionValue("E", "scalar").equals("bitsliced")
+            && (cmd.hasOption("s") || cmd.hasOption("c") || cmd.hasOption("t"))) {
+            System.out.println("参数错误：比特切片引擎编码时不能与 -s、-c、-t 同用！");
+            return;
+        }
+        if (cmd.hasOption("t")) {
+            System.out.println("模式：自动调优");
+            Tuner.Candidate tuned;
+            try {
+                Tuner.ErrorProfile profile = cmd.hasOption("n")
+                    ? measureNoise(new File(cmd.getOptionValue("n")))
+                    : Tuner.ErrorProfile.fromJammer(JAMMER_NOISE_PROBABILITY, JAMMER_MAX_BURST);
+                tuned = tune(Double.parseDouble(cmd.getOptionValue("t")), profile);
+            } catch (IllegalArgumentException e) { // 包括 NumberFormatException
+                System.out.println("参数错误：" + e.getMessage());
+                return;
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+                return;
+            }
+            if (tuned == null || !cmd.hasOption("e") && !cmd.hasOption("a")) {
+                return;
+            }
+            dataPerBlock = tuned.dataPerBlock;
+            groupsPerInterleaving = tuned.groupsPerInterleaving;
+        }
 
         // 阶段 3：分支判断
-        if (cmd.hasOption("e") || cmd.hasOption("d") || cmd.hasOption("x")) {
-            String mode = null;
-            {
-                if (cmd.hasOption("e")) mode = "e";
-                else if (cmd.hasOption("d")) mode = "d";
-                else if (cmd.hasOption("x")) mode = "x";
+        if (cmd.hasOption("S")) {
+            System.out.println("模式：仿真");
+            try (var out = new BufferedWriter(new FileWriter(cmd.getOptionValues("S")[1]))) {
+                long seed = cmd.hasOption("r") ? Long.parseLong(cmd.getOptionValue("r")) : System.nanoTime();
+                System.out.println("随机数种子：" + seed);
+                long start = System.nanoTime();
+                var results = Simulator.sweep(SIMULATOR_PROBABILITIES, SIMULATOR_MAX_BURSTS,
+                    Tuner.CANDIDATE_DATA_PER_BLOCK, Tuner.CANDIDATE_GROUPS,
+                    Long.parseLong(cmd.getOptionValues("S")[0]), seed);
+                Simulator.writeCsv(results, seed, out);
+                System.out.printf("已仿真 %d 种组合，用时 %.1f 秒%n", results.size(), (System.nanoTime() - start) / 1e9);
+            } catch (IllegalArgumentException e) { // 包括 NumberFormatException
+                System.out.println("参数错误：" + e.getMessage());
+            } catch (IOException e) {
+                System.out.println("IO 错误！文件可能无法访问！");
+                System.out.println(e.getMessage());
+            }
+        } else if (cmd.hasOption("a")) {
+            // 追加编码直接读写输出文件，不能像其他模式那样先截断输出文件
+            System.out.println("模式：追加编码");
+            File fileIn = new File(cmd.getOptionValues("a")[0]);
+            File fileOut = new File(cmd.getOptionValues("a")[1]);
+            if (cmd.hasOption("c")) {
+                System.out.println("参数错误：可追加的编码流暂不支持 CRC 校验，不能与 -c 同时使用！");
+                return;
+            }
+            try (var in = new BufferedInputStream(new FileInputStream(fileIn))) {
+                var header = new StreamHeader(
+                    cmd.hasOption("s") ? StreamHeader.Layout.SYSTEMATIC : StreamHeader.Layout.POSITIONAL,
+                    dataPerBlock, groupsPerInterleaving, 0, true);
+                long length = Encoder.appendFile(in, fileOut.toPath(), header);
+                System.out.println("有效数据总长度：" + length + " 字节");
+            } catch (StreamCorruptedException e) {
+                System.out.println(e.getMessage());
+            } catch (IllegalArgumentException e) {
+                System.out.println("参数错误：" + e.getMessage());
+            } catch (IOException e) {
+                System.out.println("IO 错误！文件可能无法访问！");
+                System.out.println(e.getMessage());
+            }
+        } else if (cmd.hasOption("u")) {
+            System.out.println("模式：原地更新");
+            String[] values = cmd.getOptionValues("u");
+            File fileEncoded = new File(values[0]);
+            try {
+                byte[] patch = Files.readAllBytes(new File(values[2]).toPath());
+                RangeUpdater.update(fileEncoded.toPath(), Long.parseLong(values[1]), patch,
+                    ENCODER_DATA_PER_BLOCK, ENCODER_GROUPS_PER_INTERLEAVING);
+                System.out.println("已更新 " + patch.length + " 字节");
+            } catch (StreamCorruptedException e) {
+                System.out.println(e.getMessage());
+            } catch (IllegalArgumentException e) { // 包括 NumberFormatException
+                System.out.println("参数错误：" + e.getMessage());
+            } catch (IOException e) {
+                System.out.println("IO 错误！文件可能无法访问！");
+                System.out.println(e.getMessage());
+            }
+        } else if (cmd.hasOption("p") && (cmd.hasOption("e") || cmd.hasOption("d"))) {
+            try {
+                int count = Integer.parseInt(cmd.getOptionValue("p"));
+                String mode = cmd.hasOption("e") ? "e" : "d";
+                File fileIn = new File(cmd.getOptionValues(mode)[0]);
+                File fileOut = new File(cmd.getOptionValues(mode)[1]);
+                Path[] stripes = new Path[count];
+                for (int s = 0; s < count; s++) {
+                    stripes[s] = new File((cmd.hasOption("e") ? fileOut : fileIn).getPath() + "." + s).toPath();
+                }
+                if (cmd.hasOption("e")) {
+                    System.out.println("模式：条带化编码");
+                    var header = new StreamHeader(
+                        cmd.hasOption("s") ? StreamHeader.Layout.SYSTEMATIC : StreamHeader.Layout.POSITIONAL,
+                        dataPerBlock, groupsPerInterleaving);
+                    int columns = StripedCodec.maxColumnsPerStripe(header.code(), count);
+                    if (columns > ChipkillDecoder.MAX_ERASURES) {
+                        System.out.println("注意：每个条带在一组码块中有 " + columns + " 列，条带缺失时将无法恢复");
+                    }
+                    try (var in = new BufferedInputStream(new FileInputStream(fileIn))) {
+                        StripedCodec.encodeStream(in, stripes, header);
+                    }
+                } else {
+                    System.out.println("模式：条带化解码");
+                    try (var out = new BufferedOutputStream(new FileOutputStream(fileOut))) {
+                        StripedCodec.decodeStream(stripes, out);
+                    }
+                }
+            } catch (StreamCorruptedException e) {
+                System.out.println(e.getMessage());
+            } catch (IllegalArgumentException e) { // 包括 NumberFormatException
+                System.out.println("参数错误：" + e.getMessage());
+            } catch (IOException e) {
+                System.out.println("IO 错误！文件可能无法访问！");
+                System.out.println(e.getMessage());
+            }
+        } else if (cmd.hasOption("x")) {
+            System.out.println("模式：干扰器");
+            File fileIn = new File(cmd.getOptionValues("x")[0]);
+            File fileOut = new File(cmd.getOptionValues("x")[1]);
+            try {
+                long bitsFlipped;
+                if (fileIn.isFile() && (fileOut.isFile() || !fileOut.exists())) {
+                    // 普通文件之间直接干扰，完好区间由内核复制
+                    bitsFlipped = Jammer.distortFile(fileIn.toPath(), fileOut.toPath(), JAMMER_NOISE_PROBABILITY, JAMMER_MAX_BURST);
+                } else {
+                    // 管道、设备等无法定位，仍按流处理
+                    try (
+                        var in = new BufferedInputStream(new FileInputStream(fileIn));
+                        var out = new BufferedOutputStream(new FileOutputStream(fileOut))
+                    ) {
+                        bitsFlipped = Jammer.distortStream(in, out, JAMMER_NOISE_PROBABILITY, JAMMER_MAX_BURST);
+                    }
+                }
+                System.out.println("翻转比特数：" + bitsFlipped);
+                printLimitedBinaryString(fileIn, 32);
+                printLimitedBinaryString(fileOut, 32);
+            } catch (IOException e) {
+                System.out.println("IO 错误！文件可能无法访问！");
+                System.out.println(e.getMessage());
+            }
+        } else if (cmd.hasOption("e") || cmd.hasOption("d")) {
+            String mode = cmd.hasOption("e") ? "e" : "d";
+            String engine = cmd.getOptionValue("E", "scalar");
+            if (!engine.equals("scalar") && !engine.equals("bitsliced")) {
+                System.out.println("未知的编解码引擎：" + engine);
+                return;
+            }
+            if (engine.equals("bitsliced") && !BitSlicedCodec.supports(ENCODER_GROUPS_PER_INTERLEAVING)) {
+                System.out.println("比特切片引擎不支持当前的交织组数量：" + ENCODER_GROUPS_PER_INTERLEAVING);
+                return;
             }
             File fileIn = new File(cmd.getOptionValues(mode)[0]);
             File fileOut = new File(cmd.getOptionValues(mode)[1]);
@@ -110,14 +365,53 @@ public class HammingCodec {
 
                 if (cmd.hasOption("e")) {
                     System.out.println("模式：编码器");
-                    Encoder.encodeStream(in, out, ENCODER_DATA_PER_BLOCK, ENCODER_GROUPS_PER_INTERLEAVING);
+                    if (cmd.hasOption("s") || cmd.hasOption("c") || cmd.hasOption("t")) {
+                        // 带文件头的编码流统一使用 LinearCode，比特切片引擎只用于旧版格式
+                        var header = new StreamHeader(
+                            cmd.hasOption("s") ? StreamHeader.Layout.SYSTEMATIC : StreamHeader.Layout.POSITIONAL,
+                            dataPerBlock, groupsPerInterleaving,
+                            Integer.parseInt(cmd.getOptionValue("c", "0")));
+                        Encoder.encodeStream(in, out, header);
+                    } else if (engine.equals("bitsliced")) {
+                        BitSlicedCodec.encodeStream(in, out, ENCODER_DATA_PER_BLOCK, ENCODER_GROUPS_PER_INTERLEAVING);
+                    } else {
+                        Encoder.encodeStream(in, out, ENCODER_DATA_PER_BLOCK, ENCODER_GROUPS_PER_INTERLEAVING);
+                    }
                 } else if (cmd.hasOption("d")) {
                     System.out.println("模式：解码器");
-                    Decoder.decodeStream(in, out, ENCODER_DATA_PER_BLOCK, ENCODER_GROUPS_PER_INTERLEAVING);
-                } else if (cmd.hasOption("x")) {
-                    System.out.println("模式：干扰器");
-                    var bitsFlipped = Jammer.distortStream(in, out, JAMMER_NOISE_PROBABILITY, JAMMER_MAX_BURST);
-                    System.out.println("翻转比特数：" + bitsFlipped);
+                    var header = StreamHeader.read(in);
+                    if (header != null) {
+                        System.out.println("文件头：" + header.layout + " 布局，每组码块 " + header.dataPerBlock
+                            + " 字节数据，" + header.groupsPerInterleaving + " 组交织，"
+                            + (header.blocksPerSuperblock == 0 ? "无 CRC 校验" : "每 " + header.blocksPerSuperblock + " 套传输块 CRC 校验")
+                            + (header.appendable ? "，可追加" : ""));
+                    }
+                    if (cmd.hasOption("k")) {
+                        if (header != null && (header.blocksPerSuperblock != 0 || header.appendable)) {
+                            System.out.println("坏列追踪模式暂不支持带 CRC 校验或可追加的编码流！");
+                            return;
+                        }
+                        var chipkill = header != null
+                            ? new ChipkillDecoder(header.code(), header.groupsPerInterleaving)
+                            : new ChipkillDecoder(CodecPlan.code(StreamHeader.Layout.POSITIONAL, ENCODER_DATA_PER_BLOCK), ENCODER_GROUPS_PER_INTERLEAVING);
+                        try {
+                            chipkill.decodeStream(in, out);
+                        } finally {
+                            System.out.println("纠正比特数：" + chipkill.correctedBits()
+                                + "，坏列：" + Arrays.toString(chipkill.failedColumns()));
+                        }
+                    } else if (header != null) {
+                        if (header.layout == StreamHeader.Layout.POSITIONAL && header.blocksPerSuperblock == 0 && !header.appendable
+                            && engine.equals("bitsliced") && BitSlicedCodec.supports(header.groupsPerInterleaving)) {
+                            BitSlicedCodec.decodeStream(in, out, header.dataPerBlock, header.groupsPerInterleaving);
+                        } else {
+                            Decoder.decodeStream(in, out, header);
+                        }
+                    } else if (engine.equals("bitsliced")) {
+                        BitSlicedCodec.decodeStream(in, out, ENCODER_DATA_PER_BLOCK, ENCODER_GROUPS_PER_INTERLEAVING);
+                    } else {
+                        Decoder.decodeStream(in, out, ENCODER_DATA_PER_BLOCK, ENCODER_GROUPS_PER_INTERLEAVING);
+                    }
                 }
 
                 in.close();
@@ -126,6 +420,8 @@ public class HammingCodec {
                 printLimitedBinaryString(fileOut, 32);
             } catch (StreamCorruptedException e) {
                 System.out.println(e.getMessage());
+            } catch (IllegalArgumentException e) { // 包括 NumberFormatException
+                System.out.println("参数错误：" + e.getMessage());
             } catch (IOException e) {
                 System.out.println("IO 错误！文件可能无法访问！");
                 System.out.println(e.getMessage());
@@ -134,6 +430,41 @@ public class HammingCodec {
 
     }
 
+    /**
+     * 统计编码文件中的比特错误，作为调优的噪音模型。文件头决定码块参数，没有文件头时按默认参数
+     */
+    private static Tuner.ErrorProfile measureNoise(File encodedFile) throws IOException {
+        try (var in = new BufferedInputStream(new FileInputStream(encodedFile))) {
+            var header = StreamHeader.read(in);
+            if (header != null && (header.blocksPerSuperblock != 0 || header.appendable)) {
+                throw new IllegalArgumentException("噪音统计暂不支持带 CRC 校验或可追加的编码流！");
+            }
+            var profile = header != null
+                ? Tuner.ErrorProfile.measure(in, header.code(), header.groupsPerInterleaving)
+                : Tuner.ErrorProfile.measure(in, CodecPlan.code(StreamHeader.Layout.POSITIONAL, ENCODER_DATA_PER_BLOCK),
+                    ENCODER_GROUPS_PER_INTERLEAVING);
+            System.out.println(String.format("实测噪音：比特错误率 %.3e，最长连续错误约 %d 位",
+                profile.probability, profile.maxBurst));
+            return profile;
+        }
+    }
+
+    /**
+     * 按给定的噪音模型评估并打印全部满足目标的组合。
+     *
+     * @return 推荐的组合，无满足目标的组合时返回 null
+     */
+    private static Tuner.Candidate tune(double targetFailureRate, Tuner.ErrorProfile profile) throws IOException {
+        var candidates = Tuner.evaluate(profile, targetFailureRate, 1 << 18);
+        if (candidates.isEmpty()) {
+            System.out.println("没有满足目标的组合，请放宽残余失败率！");
+            return null;
+        }
+        candidates.forEach(System.out::println);
+        System.out.println("推荐：" + candidates.get(0));
+        return candidates.get(0);
+    }
+
     /**
      * 以二进制样式打印文件。
      * 每 4×8 个比特一行，每 4 行一块
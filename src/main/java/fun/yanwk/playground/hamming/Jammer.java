@@ -3,6 +3,11 @@ package fun.yanwk.playground.hamming;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Random;
 
 /**
@@ -14,6 +19,9 @@ import java.util.Random;
  */
 class Jammer {
 
+    // 文件模式下合并修改的上限，单位字节
+    private static final int MAX_PATCH_SIZE = 1 << 16;
+
     /**
      * 一次读取若干字节进入缓冲区，并在缓冲区内进行“抽奖”，随机连续翻转比特。
      * 主要模拟连续干扰（burst error），不体现随机性。
@@ -36,14 +44,16 @@ class Jammer {
         }
 
         long flipCount = 0;
+        long reported = 0; // 已计入 JMX 统计的翻转数
         maxBurst = (maxBurst < 2) ? 1 : maxBurst;
         // 实际发生的翻转概率
         final double rate = (maxBurst < 2) ? probability : probability / ((1 + maxBurst) / 2.0);
         // 缓冲区大小
         final int bufferSize = (int) Math.round(maxBurst / rate / 8.0);
 
+        final byte[] buffer = new byte[bufferSize];
+        final BitBuffer bitBuffer = new BitBuffer(bufferSize * 8L);
         while (in.available() > 0) {
-            byte[] buffer = new byte[bufferSize];
             int dataLength = in.read(buffer);
             if (dataLength == -1) {
                 break;
@@ -51,27 +61,168 @@ class Jammer {
 
                 // 每个缓冲区对应一个随机种子
                 final Random random = new Random();
+                final long bits = dataLength * 8L;
+                boolean loaded = false;
+
+                // 逐比特“抽奖”等价于按几何分布抽出到下一次干扰之间的间隔，开销只与干扰次数有关
+                for (long bitAddr = nextGap(rate, random.nextDouble()); bitAddr < bits;
+                     bitAddr += 1 + nextGap(rate, random.nextDouble())) { // 连续干扰之后至少间隔一位
+
+                    // nextInt(n) 的返回区间为 [0, n)
+                    final long burstEnd = Math.min(bits, bitAddr + 1 + random.nextInt(maxBurst));
+                    if (!loaded) {
+                        // 本缓冲区内没有干扰时不必转换
+                        bitBuffer.load(buffer, 0, dataLength);
+                        loaded = true;
+                    }
+                    bitBuffer.flipRange(bitAddr, burstEnd);
+                    flipCount += burstEnd - bitAddr;
+                    bitAddr = burstEnd;
+                }
+                if (loaded) {
+                    bitBuffer.store(buffer, 0, dataLength);
+                }
+
+                out.write(buffer, 0, dataLength); // 使输出流与输入流等宽，避免只输出缓冲区整数倍大小
+                Telemetry.STATS.jammedBits.add(flipCount - reported);
+                reported = flipCount;
+            }
+        }
+
+        return flipCount;
+    }
+
+    /**
+     * 文件到文件的干扰，干扰位置与长度的分布与 {@link #distortStream} 相同（随机序列不同，输出并不逐位一致）。
+     * 只适用于普通文件：管道、设备等无法取得长度，须使用 {@link #distortStream}。
+     * 现实的噪音概率下绝大多数字节原样通过，因此先按几何分布抽出全部干扰位置，
+     * 干扰之间的完好区间交给 {@link FileChannel#transferTo} 由内核直接复制，
+     * 只读出、修改、写入被干扰命中的少数字节。CPU 开销只与干扰次数有关，速度接近文件复制。
+     *
+     * @return 一共翻转了多少位比特
+     */
+    public static long distortFile(
+        Path source,
+        Path target,
+        double probability,
+        int maxBurst
+    ) throws IOException {
+
+        try (
+            FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+            FileChannel out = FileChannel.open(target,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)
+        ) {
+            final long size = in.size();
+            if (probability <= 0) {
+                transfer(in, 0, size, out);
+                return 0;
+            }
+
+            long flipCount = 0;
+            maxBurst = (maxBurst < 2) ? 1 : maxBurst;
+            final double rate = (maxBurst < 2) ? probability : probability / ((1 + maxBurst) / 2.0);
+            final long bits = size * 8;
+            final Random random = new Random();
 
-                for (int bitAddr = 0; bitAddr < dataLength * 8; bitAddr++) {
+            // 待写入的修改：从 patchStart 开始的 patchLength 字节。相邻两次干扰落在同一字节时合并
+            long done = 0; // 已输出的字节数
+            long patchStart = 0;
+            int patchLength = 0;
+            byte[] patch = new byte[maxBurst / 8 + 2];
 
-                    if (random.nextDouble() - rate < 0) { // nextDouble() 的返回区间为 [0.0, 1.0)
+            for (long bitAddr = nextGap(rate, random.nextDouble()); bitAddr < bits;
+                 bitAddr += 1 + nextGap(rate, random.nextDouble())) { // 与 distortStream 相同，连续干扰之后至少间隔一位
 
-                        int burstToAddr = bitAddr + random.nextInt(maxBurst); // nextInt(n) 的返回区间为 [0, n)
+                final long burstEnd = Math.min(bits, bitAddr + 1 + random.nextInt(maxBurst));
+                final long first = bitAddr / 8;
+                final long last = (burstEnd - 1) / 8;
 
-                        while (bitAddr <= burstToAddr
-                            && bitAddr < dataLength * 8) {
-                            Utils.flipBitInArray(buffer, bitAddr);
-                            flipCount++;
-                            bitAddr++;
+                if (patchLength > 0 && first < patchStart + patchLength) {
+                    if (patchLength >= MAX_PATCH_SIZE) {
+                        // 噪音极密时合并可能一直延续，先写出除最后一个字节以外的部分
+                        write(out, patch, patchLength - 1);
+                        patch[0] = patch[patchLength - 1];
+                        patchStart += patchLength - 1;
+                        patchLength = 1;
+                    }
+                    // 在其后补读本次涉及的字节
+                    final int extra = (int) (last + 1 - patchStart - patchLength);
+                    if (extra > 0) {
+                        if (patch.length < patchLength + extra) {
+                            patch = Arrays.copyOf(patch, Math.max(patchLength + extra, patch.length * 2));
                         }
+                        read(in, patchStart + patchLength, patch, patchLength, extra);
+                        patchLength += extra;
                     }
+                } else {
+                    write(out, patch, patchLength);
+                    done = patchStart + patchLength;
+                    transfer(in, done, first - done, out);
+                    patchStart = first;
+                    patchLength = (int) (last + 1 - first);
+                    read(in, patchStart, patch, 0, patchLength);
                 }
 
-                out.write(buffer, 0, dataLength); // 使输出流与输入流等宽，避免只输出缓冲区整数倍大小
+                // 只取出本次涉及的字节，整段翻转后写回
+                final int offset = (int) (first - patchStart);
+                final BitBuffer burst = BitBuffer.of(patch, offset, (int) (last + 1 - first));
+                burst.flipRange(bitAddr - first * 8, burstEnd - first * 8);
+                burst.store(patch, offset, (int) (last + 1 - first));
+                flipCount += burstEnd - bitAddr;
+                bitAddr = burstEnd;
             }
+
+            write(out, patch, patchLength);
+            done = patchStart + patchLength;
+            transfer(in, done, size - done, out);
+
+            Telemetry.STATS.jammedBits.add(flipCount);
+            return flipCount;
         }
+    }
 
-        return flipCount;
+    /**
+     * 距下一次干扰开始还要跳过多少个比特，即以 rate 为成功概率的几何分布。
+     *
+     * @param uniform [0.0, 1.0) 上均匀分布的随机数
+     */
+    static long nextGap(double rate, double uniform) {
+        if (rate >= 1) {
+            return 0;
+        }
+        final double gap = Math.floor(Math.log(1 - uniform) / Math.log1p(-rate));
+        return gap >= Long.MAX_VALUE / 2 ? Long.MAX_VALUE / 2 : (long) gap;
+    }
+
+    /**
+     * 把 in 中从 position 开始的 count 字节追加到 out 的当前位置
+     */
+    private static void transfer(FileChannel in, long position, long count, FileChannel out) throws IOException {
+        while (count > 0) {
+            final long n = in.transferTo(position, count, out);
+            if (n == 0 && position >= in.size()) {
+                throw new IOException("输入文件在干扰过程中被截断！");
+            }
+            position += n;
+            count -= n;
+        }
+    }
+
+    private static void read(FileChannel in, long position, byte[] dst, int off, int len) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(dst, off, len);
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, position + buffer.position() - off) < 0) {
+                throw new IOException("输入文件在干扰过程中被截断！");
+            }
+        }
+    }
+
+    private static void write(FileChannel out, byte[] src, int len) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(src, 0, len);
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
     }
 
 }
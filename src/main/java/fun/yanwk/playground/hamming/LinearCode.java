@@ -0,0 +1,437 @@
+package fun.yanwk.playground.hamming;
+
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+
+/**
+ * GF(2) 上的线性分组码
+ *
+ * @author YAN Wenkun
+ * 生成矩阵以“系统形式 + 位置置换”的方式存储：
+ * 每个信息比特对应一行校验行（checkRows，压缩为一个 int，第 j 位即第 j 个校验比特），
+ * 编码时把值为 1 的信息比特所对应的校验行全部异或，即得到全部校验比特。
+ * 校验矩阵按列存储（columns，同样压缩为 int），计算校验子时把值为 1 的码字比特所对应的列全部异或。
+ * 信息比特与校验比特在码块中的位置（dataPositions / checkPositions）可任意指定，
+ * 因此既能表达传统汉明码“校验位位于 2 的幂”的布局，也能表达“数据在前、校验在后”的系统布局。
+ * 实例不可变，可在多个线程间共享。
+ */
+final class LinearCode {
+
+    // 码块大小，单位字节（比特长度不对齐时以 0 填充）
+    private final int codeSize;
+    // 有效数据大小，单位字节
+    private final int dataSize;
+    // 信息比特在码块中的地址
+    private final int[] dataPositions;
+    // 校验比特在码块中的地址
+    private final int[] checkPositions;
+    // 生成矩阵的校验部分，每个信息比特一行
+    private final int[] checkRows;
+    // 校验矩阵，每个码块比特一列，值为 0 表示该比特不参与校验（填充位）
+    private final int[] columns;
+    // 按列值排序的（列值，地址）对，用于由校验子反查出错地址
+    private final int[] sortedColumns;
+    private final int[] sortedPositions;
+    // 数据是否连续存放于码块开头，此时解码只需复制字节
+    private final boolean systematic;
+    // 信息比特在码块中连续存放的各段：（数据中的起点，码块中的起点，长度），编码、解码时整段复制
+    private final int[] runData;
+    private final int[] runCode;
+    private final int[] runLength;
+    // 以 64 比特为一段的掩码：第 j 个校验比特覆盖哪些信息比特；校验子第 b 位覆盖哪些码块比特
+    private final long[][] checkMasks;
+    private final long[][] syndromeMasks;
+
+    LinearCode(int codeSize, int[] dataPositions, int[] checkPositions, int[] checkRows, int[] columns) {
+        if (dataPositions.length % 8 != 0 || checkRows.length != dataPositions.length
+            || columns.length != codeSize * 8 || checkPositions.length > Integer.SIZE) {
+            throw new IllegalArgumentException("线性码参数不一致！");
+        }
+        this.codeSize = codeSize;
+        this.dataSize = dataPositions.length / 8;
+        this.dataPositions = dataPositions;
+        this.checkPositions = checkPositions;
+        this.checkRows = checkRows;
+        this.columns = columns;
+
+        boolean contiguous = true;
+        for (int k = 0; k < dataPositions.length; k++) {
+            contiguous &= dataPositions[k] == k;
+        }
+        this.systematic = contiguous;
+
+        int runs = 0;
+        final int[][] runTable = new int[3][dataPositions.length];
+        for (int k = 0; k < dataPositions.length; k++) {
+            if (k > 0 && dataPositions[k] == dataPositions[k - 1] + 1) {
+                runTable[2][runs - 1]++;
+            } else {
+                runTable[0][runs] = k;
+                runTable[1][runs] = dataPositions[k];
+                runTable[2][runs] = 1;
+                runs++;
+            }
+        }
+        this.runData = Arrays.copyOf(runTable[0], runs);
+        this.runCode = Arrays.copyOf(runTable[1], runs);
+        this.runLength = Arrays.copyOf(runTable[2], runs);
+
+        final int dataBits = dataPositions.length;
+        this.checkMasks = new long[checkPositions.length][(dataBits + 63) / 64];
+        for (int k = 0; k < dataBits; k++) {
+            for (int j = 0; j < checkPositions.length; j++) {
+                if ((checkRows[k] & (1 << j)) != 0) {
+                    checkMasks[j][k / 64] |= chunkBit(k, dataBits);
+                }
+            }
+        }
+        int syndromeBits = 0;
+        for (int column : columns) {
+            syndromeBits |= column;
+        }
+        this.syndromeMasks = new long[Integer.SIZE - Integer.numberOfLeadingZeros(syndromeBits)][(columns.length + 63) / 64];
+        for (int addr = 0; addr < columns.length; addr++) {
+            for (int b = 0; b < syndromeMasks.length; b++) {
+                if ((columns[addr] & (1 << b)) != 0) {
+                    syndromeMasks[b][addr / 64] |= chunkBit(addr, columns.length);
+                }
+            }
+        }
+
+        // 按列值排序，纠错时二分查找。相比 2^r 大小的查找表，占用空间只与码长成正比
+        long[] pairs = new long[columns.length];
+        int count = 0;
+        for (int addr = 0; addr < columns.length; addr++) {
+            if (columns[addr] != 0) {
+                pairs[count++] = ((long) columns[addr] << 32) | addr;
+            }
+        }
+        pairs = Arrays.copyOf(pairs, count);
+        Arrays.sort(pairs);
+        this.sortedColumns = new int[count];
+        this.sortedPositions = new int[count];
+        for (int i = 0; i < count; i++) {
+            sortedColumns[i] = (int) (pairs[i] >>> 32);
+            sortedPositions[i] = (int) pairs[i];
+        }
+    }
+
+    /**
+     * SEC-DED 汉明码，布局与 {@link Encoder#hammingEncodeOneBlock} 完全一致：
+     * 0 号位为扩展校验位，2 的幂为校验位，其余为数据位。
+     * 校验矩阵第 a 列取 (a << 1) | 1，即“地址 + 总奇偶校验”，与 {@link Decoder#hammingCorrectOneBlock} 的判断规则一致。
+     *
+     * @param dataPerBlock 每组码块中有效数据的长度，单位字节
+     */
+    static LinearCode hamming(int dataPerBlock) {
+        final int parityBits = hammingParityBits(dataPerBlock);
+        final int codeSize = hammingCodeSize(dataPerBlock);
+
+        final int[] dataPositions = hammingDataPositions(dataPerBlock);
+        final int[] checkPositions = new int[parityBits + 1];
+        for (int b = 0; b < parityBits; b++) {
+            checkPositions[b + 1] = 1 << b; // checkPositions[0] = 0 即扩展校验位
+        }
+
+        final int[] columns = new int[codeSize * 8];
+        for (int addr = 0; addr < columns.length; addr++) {
+            columns[addr] = (addr << 1) | 1;
+        }
+
+        return new LinearCode(codeSize, dataPositions, checkPositions, hammingCheckRows(dataPositions), columns);
+    }
+
+    /**
+     * 系统形式的 SEC-DED 汉明码：有效数据连续存放于码块开头，校验比特紧随其后。
+     * 纠错能力与 {@link #hamming(int)} 相同（同一个码的不同比特排列），码块大小也相同。
+     * 注意：“连续”只对单组码块成立。编码流中的码块经过分组交织，一套传输块里的有效数据仍是转置后分散存放的，
+     * 无错的传输块也不能直接复制；{@link SpecializedCodec} 对两种布局执行的是同一套按表取比特的流程，吞吐量相同。
+     *
+     * @param dataPerBlock 每组码块中有效数据的长度，单位字节
+     */
+    static LinearCode systematicHamming(int dataPerBlock) {
+        final int parityBits = hammingParityBits(dataPerBlock);
+        final int codeSize = hammingCodeSize(dataPerBlock);
+        final int dataBits = dataPerBlock * 8;
+
+        final int[] checkRows = hammingCheckRows(hammingDataPositions(dataPerBlock));
+        final int[] dataPositions = new int[dataBits];
+        final int[] checkPositions = new int[parityBits + 1];
+        final int[] columns = new int[codeSize * 8];
+        for (int k = 0; k < dataBits; k++) {
+            dataPositions[k] = k;
+            columns[k] = checkRows[k];
+        }
+        for (int j = 0; j < checkPositions.length; j++) {
+            checkPositions[j] = dataBits + j;
+            columns[dataBits + j] = 1 << j;
+        }
+
+        return new LinearCode(codeSize, dataPositions, checkPositions, checkRows, columns);
+    }
+
+    /**
+     * SEC-DED 汉明码的校验位数量（不含扩展校验位），推导见 {@link Encoder#encodeStream(java.io.InputStream, java.io.OutputStream, int, int)}
+     */
+    static int hammingParityBits(int dataPerBlock) {
+        return Integer.SIZE - Integer.numberOfLeadingZeros(dataPerBlock) + 3;
+    }
+
+    /**
+     * SEC-DED 汉明码的码块大小，单位字节：数据位、校验位与扩展校验位的总数向上取整到字节
+     */
+    static int hammingCodeSize(int dataPerBlock) {
+        return (dataPerBlock * 8 + hammingParityBits(dataPerBlock) + 1 + 7) / 8;
+    }
+
+    /**
+     * 码块大小，单位字节
+     */
+    int codeSize() {
+        return codeSize;
+    }
+
+    /**
+     * 每组码块中有效数据的长度，单位字节
+     */
+    int dataSize() {
+        return dataSize;
+    }
+
+    /**
+     * 信息比特在码块中的地址（副本）
+     */
+    int[] dataPositions() {
+        return dataPositions.clone();
+    }
+
+    /**
+     * 校验比特在码块中的地址（副本），第 j 个即校验行中第 j 位对应的校验比特
+     */
+    int[] checkPositions() {
+        return checkPositions.clone();
+    }
+
+    /**
+     * 有效数据是否连续存放于码块开头。
+     * 若是，则无错码块的 [0, dataSize) 即为原始数据，可直接复制或切片使用。
+     */
+    boolean isSystematic() {
+        return systematic;
+    }
+
+    /**
+     * 编码一组码块。
+     *
+     * @param data    输入数据，读取 [dataOff, dataOff + dataSize)
+     * @param code    输出数组，写入（并覆盖） [codeOff, codeOff + codeSize)
+     */
+    void encode(byte[] data, int dataOff, byte[] code, int codeOff) {
+        if (systematic) {
+            // 校验比特均位于数据之后，先复制数据，再在比特缓冲区中拼出其后的校验字节，整段写入
+            System.arraycopy(data, dataOff, code, codeOff, dataSize);
+            final BitBuffer tail = new BitBuffer((codeSize - dataSize) * 8L);
+            int check = checkBits(BitBuffer.of(data, dataOff, dataSize), 0);
+            while (check != 0) {
+                final int j = Integer.numberOfTrailingZeros(check);
+                check &= check - 1;
+                tail.flip(checkPositions[j] - dataSize * 8L);
+            }
+            tail.store(code, codeOff + dataSize, codeSize - dataSize);
+            return;
+        }
+        final BitBuffer codeword = new BitBuffer(codeSize * 8L);
+        encode(BitBuffer.of(data, dataOff, dataSize), 0, codeword, 0);
+        codeword.store(code, codeOff, codeSize);
+    }
+
+    /**
+     * 编码一组码块，并返回新数组。
+     */
+    byte[] encode(byte[] data) {
+        byte[] code = new byte[codeSize];
+        encode(data, 0, code, 0);
+        return code;
+    }
+
+    /**
+     * 同 {@link #encode(byte[], int, byte[], int)}，在比特缓冲区上进行：
+     * 信息比特按连续的段整段复制，校验比特按 64 比特一段做“掩码 + 计数”求奇偶。
+     *
+     * @param dataPos 输入的起始比特，读取 dataSize × 8 比特
+     * @param codePos 输出的起始比特，写入（并覆盖） codeSize × 8 比特
+     */
+    void encode(BitBuffer data, long dataPos, BitBuffer code, long codePos) {
+        code.clearRange(codePos, codePos + codeSize * 8L);
+        for (int r = 0; r < runLength.length; r++) {
+            BitBuffer.copy(data, dataPos + runData[r], code, codePos + runCode[r], runLength[r]);
+        }
+
+        int check = checkBits(data, dataPos);
+        while (check != 0) {
+            final int j = Integer.numberOfTrailingZeros(check);
+            check &= check - 1;
+            code.flip(codePos + checkPositions[j]);
+        }
+    }
+
+    /**
+     * 计算一组码块的校验子，0 表示无出错
+     */
+    int syndrome(byte[] code, int codeOff) {
+        return syndrome(BitBuffer.of(code, codeOff, codeSize), 0);
+    }
+
+    /**
+     * 计算从 codePos 开始的一组码块的校验子，0 表示无出错
+     */
+    int syndrome(BitBuffer code, long codePos) {
+        return parities(code, codePos, columns.length, syndromeMasks);
+    }
+
+    /**
+     * 校验矩阵中地址 addr 对应的列，即该比特单独出错时的校验子
+     */
+    int column(int addr) {
+        return columns[addr];
+    }
+
+    /**
+     * 由校验子反查出错比特的地址。
+     *
+     * @return 出错地址；校验子为 0 或不对应任何单比特错误时返回 -1
+     */
+    int errorPosition(int syndrome) {
+        if (syndrome == 0) {
+            return -1;
+        }
+        final int i = Arrays.binarySearch(sortedColumns, syndrome);
+        return i < 0 ? -1 : sortedPositions[i];
+    }
+
+    /**
+     * 原地纠错一组码块，规则同 {@link Decoder#hammingCorrectOneBlock}。
+     *
+     * @return 被纠正的比特地址，无出错时返回 -1
+     * @throws StreamCorruptedException 校验子不对应任何单比特错误（即两位或更多比特出错）
+     */
+    int correct(byte[] code, int codeOff) throws StreamCorruptedException {
+        final int addr = locate(syndrome(code, codeOff));
+        if (addr >= 0) {
+            Utils.flipBitInArray(code, codeOff * 8 + addr);
+        }
+        return addr;
+    }
+
+    /**
+     * 同 {@link #correct(byte[], int)}，原地纠错从 codePos 开始的一组码块
+     */
+    int correct(BitBuffer code, long codePos) throws StreamCorruptedException {
+        final int addr = locate(syndrome(code, codePos));
+        if (addr >= 0) {
+            code.flip(codePos + addr);
+        }
+        return addr;
+    }
+
+    /**
+     * 从码块中取出有效数据（不纠错）。系统形式下即是一次字节复制。
+     *
+     * @param out    输出数组，写入 [outOff, outOff + dataSize)
+     */
+    void decode(byte[] code, int codeOff, byte[] out, int outOff) {
+        if (systematic) {
+            System.arraycopy(code, codeOff, out, outOff, dataSize);
+            return;
+        }
+        final BitBuffer data = new BitBuffer(dataSize * 8L);
+        decode(BitBuffer.of(code, codeOff, codeSize), 0, data, 0);
+        data.store(out, outOff, dataSize);
+    }
+
+    /**
+     * 同 {@link #decode(byte[], int, byte[], int)}，按连续的段整段复制信息比特
+     *
+     * @param outPos 输出的起始比特，写入 dataSize × 8 比特
+     */
+    void decode(BitBuffer code, long codePos, BitBuffer out, long outPos) {
+        for (int r = 0; r < runLength.length; r++) {
+            BitBuffer.copy(code, codePos + runCode[r], out, outPos + runData[r], runLength[r]);
+        }
+    }
+
+    /**
+     * 同 {@link #errorPosition}，但校验子不对应任何单比特错误时抛出异常
+     *
+     * @return 出错地址；校验子为 0 时返回 -1
+     * @throws StreamCorruptedException 两位或更多比特出错
+     */
+    int locate(int syndrome) throws StreamCorruptedException {
+        if (syndrome == 0) {
+            return -1;
+        }
+        final int addr = errorPosition(syndrome);
+        if (addr < 0) {
+            throw new StreamCorruptedException("在一组编码中出现两位比特错误，无法纠错！");
+        }
+        return addr;
+    }
+
+    /**
+     * 由从 dataPos 开始的信息比特计算全部校验比特，第 j 位即第 j 个校验比特
+     */
+    int checkBits(BitBuffer data, long dataPos) {
+        return parities(data, dataPos, dataPositions.length, checkMasks);
+    }
+
+    /**
+     * 按 64 比特一段读出从 pos 开始的 bits 个比特，与各行掩码求奇偶，第 b 位即第 b 行的结果
+     */
+    private static int parities(BitBuffer buffer, long pos, int bits, long[][] masks) {
+        int result = 0;
+        for (int w = 0, from = 0; from < bits; w++, from += 64) {
+            final long v = buffer.get(pos + from, Math.min(64, bits - from));
+            for (int b = 0; b < masks.length; b++) {
+                result ^= (Long.bitCount(v & masks[b][w]) & 1) << b;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 第 k 个比特在掩码中的位置：与 {@link BitBuffer#get(long, int)} 相同，每段右对齐，段内高位在前
+     */
+    private static long chunkBit(int k, int bits) {
+        final int n = Math.min(64, bits - k / 64 * 64);
+        return 1L << (n - 1 - k % 64);
+    }
+
+    /**
+     * 传统布局下数据位的地址：跳过 0 号位与所有 2 的幂
+     */
+    private static int[] hammingDataPositions(int dataPerBlock) {
+        final int[] positions = new int[dataPerBlock * 8];
+        int addr = 3;
+        for (int k = 0; k < positions.length; addr++) {
+            if (!Utils.isPowerOf2(addr)) {
+                positions[k++] = addr;
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * 汉明码的校验行：第 0 位为扩展校验位，第 b+1 位为地址 2^b 处的校验位。
+     * 位于地址 p 的数据比特参与“p 中为 1 的各位”对应的校验，
+     * 扩展校验位覆盖数据比特本身及其参与的全部校验位，故取 (1 + bitCount(p)) 的奇偶。
+     */
+    private static int[] hammingCheckRows(int[] dataPositions) {
+        final int[] rows = new int[dataPositions.length];
+        for (int k = 0; k < rows.length; k++) {
+            final int p = dataPositions[k];
+            rows[k] = (p << 1) | ((1 + Integer.bitCount(p)) & 1);
+        }
+        return rows;
+    }
+
+}
@@ -0,0 +1,193 @@
+package fun.yanwk.playground.hamming;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * 编码文件的原地区间更新
+ *
+ * @author YAN Wenkun
+ * 传输块定长，有效数据中的一段区间只落在固定的若干套传输块上。
+ * 因此修改编码文件中的几 KB 数据时，只需读出这几套传输块，纠错、解码，拼入新数据后重新编码、交织，再写回原位，
+ * 开销与修改的长度成正比，与文件大小无关。
+ * 写回前先把要写入的字节记入同目录下的意图日志（intent journal，文件名为“原文件名.journal”）并落盘，写回完成后再删除日志。
+ * 若写回中途中断，下次更新（或调用 {@link #recover}）时按日志重做；若日志本身没写完整，则原文件未被改动，直接丢弃日志。
+ */
+class RangeUpdater {
+
+    // 日志格式：魔数、写入位置、写入长度、写入内容、以上全部的 CRC32C
+    private static final int JOURNAL_MAGIC = 0x484D434A; // "HMCJ"
+    private static final int JOURNAL_OVERHEAD = 4 + 8 + 4 + 4;
+
+    /**
+     * 用 patch 替换编码文件中从 plainOffset 开始的有效数据。
+     * 带文件头的编码文件按文件头中的参数处理；旧版编码文件没有文件头，按传入的参数处理。
+     * 只能修改已有的数据，不能越过末尾（扩展文件请用 {@link Encoder#appendFile}）。
+     *
+     * @param plainOffset                  有效数据中的偏移，单位字节
+     * @param encoderDataPerBlock          旧版编码文件的每组码块有效数据长度
+     * @param encoderGroupsPerInterleaving 旧版编码文件的交织组数量
+     * @throws StreamCorruptedException 涉及的传输块中出现两位比特错误
+     */
+    public static void update(
+        Path file,
+        long plainOffset,
+        byte[] patch,
+        int encoderDataPerBlock,
+        int encoderGroupsPerInterleaving
+    ) throws IOException {
+
+        recover(file);
+        if (patch.length == 0) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final CodecPlan plan;
+            final long dataStart;
+            final long plainLength;
+
+            final StreamHeader header = StreamHeader.read(new BufferedInputStream(Channels.newInputStream(channel.position(0))));
+            if (header == null) {
+                plan = CodecPlan.of(StreamHeader.Layout.POSITIONAL, encoderDataPerBlock, encoderGroupsPerInterleaving);
+                dataStart = 0;
+                plainLength = channel.size() / plan.encodedSize() * plan.plainSize();
+            } else if (header.blocksPerSuperblock != 0) {
+                // 超级块的 CRC 覆盖整个超级块，局部修改后须重算，暂不支持
+                throw new IllegalArgumentException("暂不支持原地修改带 CRC 校验的编码文件！");
+            } else if (header.appendable) {
+                plan = header.plan();
+                dataStart = StreamHeader.SIZE + StreamHeader.LENGTH_SIZE;
+                plainLength = StreamHeader.decodeLength(read(channel, StreamHeader.SIZE, StreamHeader.LENGTH_SIZE));
+            } else {
+                plan = header.plan();
+                dataStart = StreamHeader.SIZE;
+                plainLength = (channel.size() - dataStart) / plan.encodedSize() * plan.plainSize();
+            }
+
+            if (plainOffset < 0 || plainOffset + patch.length > plainLength) {
+                throw new IllegalArgumentException("修改区间超出有效数据范围（共 " + plainLength + " 字节）！");
+            }
+
+            final SpecializedCodec codec = plan.codec();
+            final int plainSize = plan.plainSize();
+            final int encodedSize = plan.encodedSize();
+            final long firstBlock = plainOffset / plainSize;
+            final long lastBlock = (plainOffset + patch.length - 1) / plainSize;
+            final int blocks = (int) (lastBlock - firstBlock + 1);
+            final long position = dataStart + firstBlock * encodedSize;
+
+            // 读出涉及的传输块，逐套纠错、解码，拼入新数据后重新编码
+            final byte[] region = read(channel, position, blocks * encodedSize);
+            final byte[] buffer = new byte[encodedSize];
+            final byte[] plain = new byte[plainSize];
+            final byte[] encoded = new byte[encodedSize];
+            final SpecializedCodec.Scratch scratch = codec.scratch();
+            for (int b = 0; b < blocks; b++) {
+                System.arraycopy(region, b * encodedSize, buffer, 0, encodedSize);
+                codec.decode(buffer, plain, scratch);
+
+                final long blockStart = (firstBlock + b) * plainSize;
+                final long from = Math.max(plainOffset, blockStart);
+                final long to = Math.min(plainOffset + patch.length, blockStart + plainSize);
+                System.arraycopy(patch, (int) (from - plainOffset), plain, (int) (from - blockStart), (int) (to - from));
+
+                byte[] block = codec.encode(plain, encoded, scratch);
+                System.arraycopy(block, 0, region, b * encodedSize, encodedSize);
+            }
+
+            final Path journal = journalOf(file);
+            writeJournal(journal, position, region);
+            write(channel, position, region);
+            channel.force(false);
+            Files.delete(journal);
+        }
+    }
+
+    /**
+     * 检查编码文件是否有未完成的更新：日志完整则重做，否则丢弃。没有日志时什么也不做。
+     *
+     * @return 是否重做了一次更新
+     */
+    public static boolean recover(Path file) throws IOException {
+        final Path journal = journalOf(file);
+        if (!Files.exists(journal)) {
+            return false;
+        }
+
+        final ByteBuffer entry = ByteBuffer.wrap(Files.readAllBytes(journal));
+        boolean complete = false;
+        long position = 0;
+        byte[] data = null;
+        if (entry.remaining() >= JOURNAL_OVERHEAD && entry.getInt() == JOURNAL_MAGIC) {
+            position = entry.getLong();
+            final int length = entry.getInt();
+            if (length >= 0 && entry.remaining() == length + 4) {
+                data = new byte[length];
+                entry.get(data);
+                final CRC32C crc = new CRC32C();
+                crc.update(entry.array(), 0, entry.capacity() - 4);
+                complete = (int) crc.getValue() == entry.getInt();
+            }
+        }
+
+        if (complete) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                write(channel, position, data);
+                channel.force(false);
+            }
+        }
+        Files.delete(journal);
+        return complete;
+    }
+
+    static Path journalOf(Path file) {
+        return file.resolveSibling(file.getFileName() + ".journal");
+    }
+
+    /**
+     * 写入并落盘一条日志：在 position 处写入 data
+     */
+    static void writeJournal(Path journal, long position, byte[] data) throws IOException {
+        final ByteBuffer entry = ByteBuffer.allocate(JOURNAL_OVERHEAD + data.length);
+        entry.putInt(JOURNAL_MAGIC).putLong(position).putInt(data.length).put(data);
+        final CRC32C crc = new CRC32C();
+        crc.update(entry.array(), 0, entry.position());
+        entry.putInt((int) crc.getValue());
+        entry.flip();
+
+        try (FileChannel channel = FileChannel.open(journal,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (entry.hasRemaining()) {
+                channel.write(entry);
+            }
+            channel.force(false);
+        }
+    }
+
+    private static byte[] read(FileChannel channel, long position, int size) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new StreamCorruptedException("编码文件比预期的短，文件可能被截断！");
+            }
+        }
+        return buffer.array();
+    }
+
+    private static void write(FileChannel channel, long position, byte[] data) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+}
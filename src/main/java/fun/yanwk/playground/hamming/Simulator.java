@@ -0,0 +1,290 @@
+package fun.yanwk.playground.hamming;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * 误码率（BER）的蒙特卡洛仿真
+ *
+ * @author YAN Wenkun
+ * 在内存中反复进行“编码 → 干扰 → 解码”，统计每组码块的结果：纠错成功、发现无法纠错、或“乱纠错”（静默输出错误数据）。
+ * 为了在合理的时间内仿真到 1e-9 量级的残余错误率，做了两点化简，均不影响统计结果：
+ * 1、线性分组码的纠错结果只取决于错误图样（校验子与有效数据无关），因此总是编码全 0 的数据，
+ *    干扰后的码块即是错误图样本身，无需真正编码、也无需与原数据比对；
+ * 2、与 {@link Jammer} 相同，按几何分布直接抽出下一次连续干扰的位置，只处理被干扰命中的码块，
+ *    开销只与干扰次数有关，与仿真的数据量无关。
+ * 各个场景拆分成若干段，在全部 CPU 核心上并行仿真，每段使用独立的随机数种子，结果可复现。
+ */
+class Simulator {
+
+    // 每个场景拆分成多少段并行仿真
+    private static final int CHUNKS = 64;
+
+    /**
+     * 一个仿真场景：噪音参数与编码参数
+     */
+    static class Scenario {
+        final double probability;
+        final int maxBurst;
+        final int dataPerBlock;
+        final int groupsPerInterleaving;
+
+        Scenario(double probability, int maxBurst, int dataPerBlock, int groupsPerInterleaving) {
+            this.probability = probability;
+            this.maxBurst = Math.max(1, maxBurst);
+            this.dataPerBlock = dataPerBlock;
+            this.groupsPerInterleaving = groupsPerInterleaving;
+        }
+    }
+
+    /**
+     * 一个场景的仿真结果，计数单位为码块
+     */
+    static class Result {
+        final Scenario scenario;
+        long codewords;
+        long flippedBits;
+        // 出现错误且被正确纠正（含只错在填充位、不影响有效数据的情况）
+        long corrected;
+        // 发现两位比特错误，解码器抛出异常
+        long detected;
+        // 解码器未察觉，输出了错误的有效数据
+        long miscorrected;
+
+        Result(Scenario scenario) {
+            this.scenario = scenario;
+        }
+
+        Result merge(Result other) {
+            codewords += other.codewords;
+            flippedBits += other.flippedBits;
+            corrected += other.corrected;
+            detected += other.detected;
+            miscorrected += other.miscorrected;
+            return this;
+        }
+
+        double correctedRate() {
+            return (double) corrected / codewords;
+        }
+
+        double detectedRate() {
+            return (double) detected / codewords;
+        }
+
+        double miscorrectedRate() {
+            return (double) miscorrected / codewords;
+        }
+    }
+
+    /**
+     * 仿真一个场景
+     *
+     * @param transmissionBlocks 仿真多少套传输块
+     * @param seed               随机数种子
+     */
+    static Result simulate(Scenario scenario, long transmissionBlocks, long seed) {
+        return simulate(scenario, transmissionBlocks, new SplittableRandom(seed));
+    }
+
+    /**
+     * 仿真一个场景，随机数取自 root（会被推进）
+     */
+    private static Result simulate(Scenario scenario, long transmissionBlocks, SplittableRandom root) {
+        final long perChunk = (transmissionBlocks + CHUNKS - 1) / CHUNKS;
+        // 依次 split 出各段的随机数发生器，保证各段互相独立、且与线程调度无关
+        final SplittableRandom[] randoms = new SplittableRandom[CHUNKS];
+        for (int chunk = 0; chunk < CHUNKS; chunk++) {
+            randoms[chunk] = root.split();
+        }
+        return IntStream.range(0, CHUNKS)
+            .parallel()
+            .mapToObj(chunk -> {
+                final long blocks = Math.max(0, Math.min(perChunk, transmissionBlocks - chunk * perChunk));
+                return simulateChunk(scenario, blocks, randoms[chunk]);
+            })
+            .reduce(Result::merge)
+            .orElseThrow();
+    }
+
+    /**
+     * 依次仿真全部参数组合。各场景的随机数发生器依次从 seed split 而来，互相独立，结果仍可由 seed 复现
+     */
+    static List<Result> sweep(
+        double[] probabilities,
+        int[] maxBursts,
+        int[] dataPerBlocks,
+        int[] groups,
+        long transmissionBlocks,
+        long seed
+    ) {
+        final SplittableRandom root = new SplittableRandom(seed);
+        List<Result> results = new ArrayList<>();
+        for (double probability : probabilities) {
+            for (int maxBurst : maxBursts) {
+                for (int dataPerBlock : dataPerBlocks) {
+                    for (int g : groups) {
+                        results.add(simulate(new Scenario(probability, maxBurst, dataPerBlock, g), transmissionBlocks, root.split()));
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 以 CSV 格式输出仿真结果，比率的单位均为“每组码块”。各行一律以 \n 结尾，与平台无关。
+     * model 列为 {@link Tuner#residualFailureRate} 的估算值（换算为每组码块），可与 detected + miscorrected 对照。
+     * seed 列为 {@link #sweep} 使用的随机数种子，每行相同，用于复现整个文件。
+     */
+    static void writeCsv(List<Result> results, long seed, Appendable out) throws IOException {
+        out.append("probability,maxBurst,dataPerBlock,groups,codewords,flippedBits,"
+            + "corrected,detected,miscorrected,correctedRate,detectedRate,miscorrectedRate,model,seed\n");
+        for (Result r : results) {
+            final Scenario s = r.scenario;
+            final double model = Tuner.residualFailureRate(
+                new Tuner.ErrorProfile(s.probability, s.maxBurst), s.dataPerBlock, s.groupsPerInterleaving) * s.dataPerBlock;
+            out.append(String.format(Locale.ROOT, "%g,%d,%d,%d,%d,%d,%d,%d,%d,%.6e,%.6e,%.6e,%.6e,%d\n",
+                s.probability, s.maxBurst, s.dataPerBlock, s.groupsPerInterleaving,
+                r.codewords, r.flippedBits, r.corrected, r.detected, r.miscorrected,
+                r.correctedRate(), r.detectedRate(), r.miscorrectedRate(), model, seed));
+        }
+    }
+
+    /**
+     * 仿真一段连续的传输块。比特流视为首尾相连，连续干扰可以跨越传输块的边界。
+     */
+    private static Result simulateChunk(Scenario scenario, long transmissionBlocks, SplittableRandom random) {
+        final Result result = new Result(scenario);
+        final LinearCode code = CodecPlan.code(StreamHeader.Layout.POSITIONAL, scenario.dataPerBlock);
+        final int groups = scenario.groupsPerInterleaving;
+        final int codeBits = code.codeSize() * 8;
+        final long blockBits = (long) codeBits * groups;
+        final long totalBits = blockBits * transmissionBlocks;
+        result.codewords = (long) groups * transmissionBlocks;
+        if (scenario.probability <= 0 || transmissionBlocks == 0) {
+            return result;
+        }
+
+        final double rate = (scenario.maxBurst < 2)
+            ? scenario.probability
+            : scenario.probability / ((1 + scenario.maxBurst) / 2.0);
+
+        // 当前传输块反交织后的错误图样，以及其中被命中的码块，整个仿真中复用
+        final Pattern pattern = new Pattern(code, groups);
+        long currentBlock = -1;
+
+        for (long bit = Jammer.nextGap(rate, random.nextDouble()); bit < totalBits;
+             bit += 1 + Jammer.nextGap(rate, random.nextDouble())) { // 与干扰器相同，连续干扰之后至少间隔一位
+
+            final long burstEnd = Math.min(totalBits, bit + 1 + random.nextInt(scenario.maxBurst));
+            for (; bit < burstEnd; bit++) {
+                final long block = bit / blockBits;
+                if (block != currentBlock) {
+                    pattern.classify(result);
+                    currentBlock = block;
+                }
+                // 交织后的第 j × G + i 个比特，即是第 i 组码块的第 j 号比特
+                final int t = (int) (bit - block * blockBits);
+                pattern.flip(t % groups, t / groups);
+                result.flippedBits++;
+            }
+        }
+        pattern.classify(result);
+        return result;
+    }
+
+    /**
+     * 一套传输块（反交织后）的错误图样
+     * 逐比特翻转时顺带累加校验子，只错一位的码块（绝大多数）无需扫描整组码块即可判定。
+     */
+    private static class Pattern {
+        private final LinearCode code;
+        private final int codeSize;
+        private final int codeBits;
+        private final byte[] errors;
+        private final byte[] data;
+        // 被命中的码块，以及每组码块的校验子、翻转次数、最后一次翻转的地址
+        private final int[] touched;
+        private int touchedCount = 0;
+        private final int[] syndromes;
+        private final int[] flips;
+        private final int[] lastAddr;
+
+        Pattern(LinearCode code, int groups) {
+            this.code = code;
+            this.codeSize = code.codeSize();
+            this.codeBits = codeSize * 8;
+            this.errors = new byte[codeSize * groups];
+            this.data = new byte[code.dataSize()];
+            this.touched = new int[groups];
+            this.syndromes = new int[groups];
+            this.flips = new int[groups];
+            this.lastAddr = new int[groups];
+        }
+
+        /**
+         * 翻转第 m 组码块的 addr 号比特
+         */
+        void flip(int m, int addr) {
+            Utils.flipBitInArray(errors, m * codeBits + addr);
+            syndromes[m] ^= code.column(addr);
+            lastAddr[m] = addr;
+            if (flips[m]++ == 0) {
+                touched[touchedCount++] = m;
+            }
+        }
+
+        /**
+         * 解码被命中的码块并分类计数，随后清空错误图样
+         */
+        void classify(Result result) {
+            for (int k = 0; k < touchedCount; k++) {
+                final int m = touched[k];
+                final int offset = m * codeSize;
+
+                if (flips[m] == 1 && code.errorPosition(syndromes[m]) == lastAddr[m]) {
+                    result.corrected++;
+                    errors[offset + lastAddr[m] / 8] = 0;
+                } else {
+                    classifySlow(offset, result);
+                    Arrays.fill(errors, offset, offset + codeSize, (byte) 0);
+                }
+                syndromes[m] = 0;
+                flips[m] = 0;
+            }
+            touchedCount = 0;
+        }
+
+        private void classifySlow(int offset, Result result) {
+            try {
+                code.correct(errors, offset);
+            } catch (StreamCorruptedException e) {
+                result.detected++;
+                return;
+            }
+            code.decode(errors, offset, data, 0);
+            if (isZero(data)) {
+                result.corrected++;
+            } else {
+                result.miscorrected++;
+            }
+        }
+    }
+
+    private static boolean isZero(byte[] data) {
+        for (byte b : data) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,292 @@
+package fun.yanwk.playground.hamming;
+
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+
+/**
+ * 按几何参数特化的传输块编解码器
+ *
+ * @author YAN Wenkun
+ * 通用路径（{@link Encoder#encodeTransmissionBlock(byte[], LinearCode, int, byte[])}）先逐组编码到中间缓冲区，再整体交织，
+ * 每一步都按 dataSize、codeSize、groups 现算下标。
+ * 本类在构造时针对一组参数（线性码 + 交织组数量）把全部下标预先算好，编解码时只按表执行，并把编码与交织合为一步：
+ * 1、编码：信息比特按 8×8 小块转置后直接写到交织后的位置，省去中间缓冲区与第二次转置；
+ *    校验比特由掩码求奇偶，再按交织组拼成一行写出。
+ * 2、解码：交织后码块的每个地址占一行（groups 比特，即各组码块在该地址上的比特），
+ *    把参与同一位校验子的各行异或（比特切片），一次算出最多 64 组码块的校验子；
+ *    信息比特按小块转置后直接取出，有错时只翻转输出中的对应比特。
+ * Java 11 没有隐藏类（hidden class），运行时生成字节码又要引入额外的依赖，因此这里的“特化”以预先计算的下标表实现：
+ * 热点循环中不再有与几何参数相关的乘除、取余与查找。
+ * 同一组参数的实例由 {@link CodecPlan#codec()} 缓存。实例不可变，可在多个线程间共享；
+ * 编解码过程中用到的比特缓冲区与中间数组放在 {@link Scratch} 中，由调用者按线程各持一份、逐块复用，热点循环中不再分配内存。
+ */
+final class SpecializedCodec {
+
+    private final LinearCode code;
+    private final int groups;
+    private final int dataSize;
+    private final int dataBits;
+    // 第 k 个信息比特、第 j 个校验比特在交织后的传输块中所在行的起点（地址 × groups）
+    private final long[] dataRows;
+    private final long[] checkRows;
+    // 参与校验的码块地址所在行的起点，及其在校验矩阵中的列
+    private final long[] syndromeRows;
+    private final int[] syndromeColumns;
+    private final int syndromeBits;
+    // 码块地址对应第几个信息比特，校验位与填充位为 -1
+    private final int[] dataIndex;
+
+    SpecializedCodec(LinearCode code, int groups) {
+        if (groups <= 0) {
+            throw new IllegalArgumentException("交织组数量须为正数！");
+        }
+        this.code = code;
+        this.groups = groups;
+        this.dataSize = code.dataSize();
+        this.dataBits = dataSize * 8;
+
+        final int[] dataPositions = code.dataPositions();
+        final int[] checkPositions = code.checkPositions();
+        this.dataRows = new long[dataPositions.length];
+        this.dataIndex = new int[code.codeSize() * 8];
+        Arrays.fill(dataIndex, -1);
+        for (int k = 0; k < dataPositions.length; k++) {
+            dataRows[k] = (long) dataPositions[k] * groups;
+            dataIndex[dataPositions[k]] = k;
+        }
+        this.checkRows = new long[checkPositions.length];
+        for (int j = 0; j < checkPositions.length; j++) {
+            checkRows[j] = (long) checkPositions[j] * groups;
+        }
+
+        int active = 0;
+        int bits = 0;
+        for (int addr = 0; addr < dataIndex.length; addr++) {
+            if (code.column(addr) != 0) {
+                active++;
+                bits |= code.column(addr);
+            }
+        }
+        this.syndromeRows = new long[active];
+        this.syndromeColumns = new int[active];
+        for (int addr = 0, a = 0; addr < dataIndex.length; addr++) {
+            if (code.column(addr) != 0) {
+                syndromeRows[a] = (long) addr * groups;
+                syndromeColumns[a] = code.column(addr);
+                a++;
+            }
+        }
+        this.syndromeBits = Integer.SIZE - Integer.numberOfLeadingZeros(bits);
+    }
+
+    /**
+     * 编解码的工作区，与特定的 SpecializedCodec 实例配套。有状态，不可在多个线程间共享
+     */
+    static final class Scratch {
+        // 一套传输块（交织后）的比特
+        private final BitBuffer block;
+        // 一套传输块的有效数据的比特
+        private final BitBuffer data;
+        // 编码时为各组的校验比特，解码时为各组的校验子
+        private final int[] values;
+        private final long[] slices;
+
+        private Scratch(SpecializedCodec codec) {
+            this.block = new BitBuffer(codec.encodedSize() * 8L);
+            this.data = new BitBuffer(codec.plainSize() * 8L);
+            this.values = new int[codec.groups];
+            this.slices = new long[codec.syndromeBits];
+        }
+    }
+
+    /**
+     * 新建一份工作区。每个线程（或每个有状态的调用者）持有一份，在整个流中复用
+     */
+    Scratch scratch() {
+        return new Scratch(this);
+    }
+
+    LinearCode code() {
+        return code;
+    }
+
+    int groups() {
+        return groups;
+    }
+
+    /**
+     * 一套传输块的有效数据大小，单位字节
+     */
+    int plainSize() {
+        return dataSize * groups;
+    }
+
+    /**
+     * 一套传输块的大小，单位字节
+     */
+    int encodedSize() {
+        return code.codeSize() * groups;
+    }
+
+    /**
+     * 编码一套传输块，每次调用都新建工作区。逐块处理整个流时应改用 {@link #encode(byte[], byte[], Scratch)}
+     */
+    byte[] encode(byte[] plain, byte[] encoded) {
+        return encode(plain, encoded, scratch());
+    }
+
+    /**
+     * 编码并交织一套传输块，输出与 {@link Encoder#encodeTransmissionBlock(byte[], LinearCode, int, byte[])} 完全一致。
+     *
+     * @param plain   一套传输块的有效数据，groups × dataSize 字节
+     * @param encoded 输出，groups × codeSize 字节
+     * @param scratch 由本实例的 {@link #scratch()} 创建的工作区
+     * @return 交织后的传输块，即 encoded 本身
+     */
+    byte[] encode(byte[] plain, byte[] encoded, Scratch scratch) {
+        var coding = Telemetry.beginStage(Telemetry.STAGE_CODE);
+        final BitBuffer out = scratch.block;
+        out.clear(); // 信息行与校验行会被完整覆盖，需要清零的只有填充位
+
+        // 信息比特：第 i 组的第 k 位写到第 k 行的第 i 列。小块的每一行恰好是有效数据中的一个字节
+        for (int i = 0; i < groups; i += 8) {
+            final int h = Math.min(8, groups - i);
+            for (int k = 0; k < dataBits; k += 8) {
+                long x = 0;
+                for (int r = 0; r < h; r++) {
+                    x |= (plain[(i + r) * dataSize + k / 8] & 0xFFL) << (56 - r * 8);
+                }
+                x = BitBuffer.transpose8x8(x);
+                for (int c = 0; c < 8; c++) {
+                    out.put(dataRows[k + c] + i, h, x >>> (64 - c * 8 - h));
+                }
+            }
+        }
+
+        // 校验比特：逐组求出后，第 j 位按组拼成一行
+        final BitBuffer data = scratch.data;
+        data.load(plain, 0, plain.length);
+        final int[] checks = scratch.values;
+        for (int m = 0; m < groups; m++) {
+            checks[m] = code.checkBits(data, (long) m * dataBits);
+        }
+        for (int i = 0; i < groups; i += 64) {
+            final int w = Math.min(64, groups - i);
+            for (int j = 0; j < checkRows.length; j++) {
+                long v = 0;
+                for (int r = 0; r < w; r++) {
+                    v = (v << 1) | ((checks[i + r] >>> j) & 1);
+                }
+                out.put(checkRows[j] + i, w, v);
+            }
+        }
+
+        out.store(encoded, 0, encoded.length);
+        Telemetry.endStage(coding, plain.length);
+        Telemetry.block(plain.length, encoded.length);
+        return encoded;
+    }
+
+    /**
+     * 解码一套传输块，每次调用都新建工作区。逐块处理整个流时应改用 {@link #decode(byte[], byte[], Scratch)}
+     */
+    void decode(byte[] buffer, byte[] decoded) throws StreamCorruptedException {
+        decode(buffer, decoded, scratch());
+    }
+
+    /**
+     * 反交织、纠错并解码一套传输块，结果与 {@link Decoder#decodeTransmissionBlock} 完全一致。
+     *
+     * @param buffer  一套传输块，groups × codeSize 字节，不会被修改
+     * @param decoded 输出，groups × dataSize 字节
+     * @param scratch 由本实例的 {@link #scratch()} 创建的工作区
+     * @throws StreamCorruptedException 某组码块出现两位比特错误
+     */
+    void decode(byte[] buffer, byte[] decoded, Scratch scratch) throws StreamCorruptedException {
+        var coding = Telemetry.beginStage(Telemetry.STAGE_CODE);
+        final int[] syndromes = decodeUncorrected(buffer, decoded, scratch);
+
+        // 纠错：只翻转落在信息比特上的错误
+        for (int m = 0; m < groups; m++) {
+            if (syndromes[m] == 0) {
+                continue;
+            }
+            final int addr;
+            try {
+                addr = code.locate(syndromes[m]);
+            } catch (StreamCorruptedException e) {
+                Telemetry.correction(-1);
+                throw e;
+            }
+            Telemetry.correction(addr);
+            flip(decoded, m, addr);
+        }
+
+        Telemetry.endStage(coding, decoded.length);
+        Telemetry.block(buffer.length, decoded.length);
+    }
+
+    /**
+     * 反交织并取出信息比特，同时算出各组码块的校验子，但不纠错。
+     * 供需要自行决定纠错方式的调用者使用（例如 {@link ChipkillDecoder} 的擦除恢复），纠错时用 {@link #flip} 修改输出。
+     *
+     * @param buffer  一套传输块，groups × codeSize 字节，不会被修改
+     * @param decoded 输出，groups × dataSize 字节，为未经纠错的信息比特
+     * @param scratch 由本实例的 {@link #scratch()} 创建的工作区
+     * @return 各组码块的校验子，即工作区中的数组，下次调用时会被覆盖
+     */
+    int[] decodeUncorrected(byte[] buffer, byte[] decoded, Scratch scratch) {
+        final BitBuffer in = scratch.block;
+        in.load(buffer, 0, buffer.length);
+
+        // 校验子：每 64 组为一片，切片 b 的第 r 位（从高位数起）即第 r 组校验子的第 b 位
+        final int[] syndromes = scratch.values;
+        Arrays.fill(syndromes, 0);
+        final long[] slices = scratch.slices;
+        for (int i = 0; i < groups; i += 64) {
+            final int w = Math.min(64, groups - i);
+            Arrays.fill(slices, 0L);
+            for (int a = 0; a < syndromeRows.length; a++) {
+                final long row = in.get(syndromeRows[a] + i, w);
+                if (row == 0) {
+                    continue;
+                }
+                for (int column = syndromeColumns[a]; column != 0; column &= column - 1) {
+                    slices[Integer.numberOfTrailingZeros(column)] ^= row;
+                }
+            }
+            for (int b = 0; b < syndromeBits; b++) {
+                for (long v = slices[b]; v != 0; v &= v - 1) {
+                    syndromes[i + w - 1 - Long.numberOfTrailingZeros(v)] |= 1 << b;
+                }
+            }
+        }
+
+        // 信息比特：第 k 行的第 i 列即第 i 组的第 k 位。转置后小块的每一行恰好是输出中的一个字节
+        for (int i = 0; i < groups; i += 8) {
+            final int w = Math.min(8, groups - i);
+            for (int k = 0; k < dataBits; k += 8) {
+                long x = 0;
+                for (int r = 0; r < 8; r++) {
+                    x |= (in.get(dataRows[k + r] + i, w) << (8 - w)) << (56 - r * 8);
+                }
+                x = BitBuffer.transpose8x8(x);
+                for (int c = 0; c < w; c++) {
+                    decoded[(i + c) * dataSize + k / 8] = (byte) (x >>> (56 - c * 8));
+                }
+            }
+        }
+        return syndromes;
+    }
+
+    /**
+     * 翻转第 group 组码块地址 addr 上的比特在输出中的对应位置；校验位与填充位不在输出中，不做任何事
+     */
+    void flip(byte[] decoded, int group, int addr) {
+        final int k = dataIndex[addr];
+        if (k >= 0) {
+            decoded[group * dataSize + k / 8] ^= (byte) (0x80 >>> (k % 8));
+        }
+    }
+
+}
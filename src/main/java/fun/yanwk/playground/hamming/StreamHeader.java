@@ -0,0 +1,225 @@
+package fun.yanwk.playground.hamming;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * 编码流的文件头
+ *
+ * @author YAN Wenkun
+ * 旧版编码流没有文件头，直接从第一套传输块开始；为了兼容，默认仍不写文件头。
+ * 使用非默认选项（如系统布局）编码时，在流的开头写入定长 16 字节的文件头，解码器据此自动选择参数：
+ * <pre>
+ * 0  - 3  魔数 "HMCS"
+ * 4       版本号
+ * 5       低 4 位为码块布局，0 为传统布局，1 为系统布局；最高位为 1 表示可追加（见下）
+ * 6  - 7  每个超级块包含的传输块数量，0 表示不做 CRC 校验（无符号）
+ * 8  - 9  每组码块的有效数据长度（字节，无符号），不超过 {@link #MAX_DATA_PER_BLOCK}
+ * 10 - 11 交织组数量（无符号），不超过 {@link #MAX_GROUPS}
+ * 12 - 15 前 12 字节的 CRC32C
+ * </pre>
+ * 文件头决定了后续全部数据的解读方式，一位之差就会得到错误的几何参数，因此以 CRC32C 校验，并限制各字段的取值范围：
+ * 有魔数但校验不符或字段越界时，视为文件头已损坏，不会按错误的参数去分配缓冲区或生成执行计划。
+ * 启用 CRC 校验时，每个超级块之前有一个 {@link #CHECKSUM_SIZE} 字节的校验字，见 {@link Encoder#encodeStream(InputStream, OutputStream, StreamHeader)}。
+ * 可追加的编码流在文件头之后紧跟一个 {@link #LENGTH_SIZE} 字节的长度字，记录有效数据的总长度，
+ * 解码时据此去掉末尾填充的 0，追加时据此找到最后一套未填满的传输块，见 {@link Encoder#appendFile}。
+ */
+final class StreamHeader {
+
+    static final int SIZE = 16;
+    static final int VERSION = 2;
+    private static final byte[] MAGIC = {'H', 'M', 'C', 'S'};
+    // 文件头中受 CRC32C 保护的部分
+    private static final int CHECKED_SIZE = SIZE - 4;
+    // 超级块的最大传输块数量（文件头中以无符号 short 存储）
+    static final int MAX_BLOCKS_PER_SUPERBLOCK = 0xFFFF;
+    // 每组码块有效数据长度与交织组数量的上限，远大于实际可用的取值，只为挡住损坏的文件头
+    static final int MAX_DATA_PER_BLOCK = 1024;
+    static final int MAX_GROUPS = 4096;
+
+    // 校验字：4 字节 CRC32C，以 (39,32) 汉明码保护，占 5 字节
+    private static final LinearCode CHECKSUM_CODE = LinearCode.hamming(4);
+    static final int CHECKSUM_SIZE = CHECKSUM_CODE.codeSize();
+
+    // 长度字：8 字节有效数据总长度，以 (72,64) 汉明码保护，占 9 字节
+    private static final LinearCode LENGTH_CODE = LinearCode.hamming(8);
+    static final int LENGTH_SIZE = LENGTH_CODE.codeSize();
+
+    // 布局字节中的标志位
+    private static final int LAYOUT_MASK = 0x0F;
+    private static final int FLAG_APPENDABLE = 0x80;
+
+    /**
+     * 码块布局
+     */
+    enum Layout {
+        // 传统布局：校验位位于 2 的幂，数据位分散其间
+        POSITIONAL,
+        // 系统布局：每组码块内数据连续存放在前，校验位在后。交织后的编码流并不因此更快解码，见 LinearCode.systematicHamming
+        SYSTEMATIC
+    }
+
+    final Layout layout;
+    final int dataPerBlock;
+    final int groupsPerInterleaving;
+    final int blocksPerSuperblock;
+    final boolean appendable;
+
+    StreamHeader(Layout layout, int dataPerBlock, int groupsPerInterleaving) {
+        this(layout, dataPerBlock, groupsPerInterleaving, 0);
+    }
+
+    /**
+     * @param blocksPerSuperblock 每多少套传输块计算一次 CRC32C，0 表示不校验
+     */
+    StreamHeader(Layout layout, int dataPerBlock, int groupsPerInterleaving, int blocksPerSuperblock) {
+        this(layout, dataPerBlock, groupsPerInterleaving, blocksPerSuperblock, false);
+    }
+
+    /**
+     * @param appendable 是否可追加，即文件头之后是否带有长度字。暂不能与 CRC 校验同时使用
+     */
+    StreamHeader(Layout layout, int dataPerBlock, int groupsPerInterleaving, int blocksPerSuperblock, boolean appendable) {
+        if (dataPerBlock <= 0 || dataPerBlock > MAX_DATA_PER_BLOCK) {
+            throw new IllegalArgumentException("每组码块有效数据长度须在 1 到 " + MAX_DATA_PER_BLOCK + " 之间！");
+        }
+        if (groupsPerInterleaving <= 0 || groupsPerInterleaving > MAX_GROUPS) {
+            throw new IllegalArgumentException("交织组数量须在 1 到 " + MAX_GROUPS + " 之间！");
+        }
+        if (blocksPerSuperblock < 0 || blocksPerSuperblock > MAX_BLOCKS_PER_SUPERBLOCK) {
+            throw new IllegalArgumentException("超级块大小须在 0 到 " + MAX_BLOCKS_PER_SUPERBLOCK + " 之间！");
+        }
+        if (appendable && blocksPerSuperblock != 0) {
+            throw new IllegalArgumentException("可追加的编码流暂不支持 CRC 校验！");
+        }
+        this.layout = layout;
+        this.dataPerBlock = dataPerBlock;
+        this.groupsPerInterleaving = groupsPerInterleaving;
+        this.blocksPerSuperblock = blocksPerSuperblock;
+        this.appendable = appendable;
+    }
+
+    /**
+     * 按文件头中记录的布局构造线性分组码
+     */
+    LinearCode code() {
+        return CodecPlan.code(layout, dataPerBlock);
+    }
+
+    CodecPlan plan() {
+        return CodecPlan.of(this);
+    }
+
+    void write(OutputStream out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+        buffer.put(MAGIC)
+            .put((byte) VERSION)
+            .put((byte) (layout.ordinal() | (appendable ? FLAG_APPENDABLE : 0)))
+            .putShort((short) blocksPerSuperblock)
+            .putShort((short) dataPerBlock)
+            .putShort((short) groupsPerInterleaving)
+            .putInt(checksum(buffer.array()));
+        out.write(buffer.array());
+    }
+
+    /**
+     * 尝试从输入流开头读取文件头。
+     * 若没有文件头（旧版编码流），则将输入流复位，返回 null。
+     *
+     * @param in 须支持 mark/reset，例如 BufferedInputStream
+     * @throws StreamCorruptedException 有魔数，但校验不符、版本或字段无法识别
+     */
+    static StreamHeader read(InputStream in) throws IOException {
+        if (!in.markSupported()) {
+            throw new IllegalArgumentException("输入流须支持 mark/reset！");
+        }
+        in.mark(SIZE);
+        byte[] raw = in.readNBytes(SIZE);
+        if (raw.length < SIZE || !Arrays.equals(raw, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+            in.reset();
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(raw, MAGIC.length, SIZE - MAGIC.length);
+        int version = buffer.get();
+        int flags = buffer.get() & 0xFF;
+        int layout = flags & LAYOUT_MASK;
+        int blocksPerSuperblock = Short.toUnsignedInt(buffer.getShort());
+        int dataPerBlock = Short.toUnsignedInt(buffer.getShort());
+        int groups = Short.toUnsignedInt(buffer.getShort());
+        int crc = buffer.getInt();
+        // 先核对校验再看版本：版本号本身出错时应报告损坏，而不是“不支持”
+        if (crc != checksum(raw)) {
+            throw new StreamCorruptedException("文件头已损坏！");
+        }
+        if (version != VERSION) {
+            throw new StreamCorruptedException("不支持的文件头版本：" + version);
+        }
+        boolean appendable = (flags & FLAG_APPENDABLE) != 0;
+        if (layout >= Layout.values().length || (flags & ~(LAYOUT_MASK | FLAG_APPENDABLE)) != 0
+            || dataPerBlock <= 0 || dataPerBlock > MAX_DATA_PER_BLOCK || groups <= 0 || groups > MAX_GROUPS
+            || (appendable && blocksPerSuperblock != 0)) {
+            throw new StreamCorruptedException("文件头已损坏！");
+        }
+        return new StreamHeader(Layout.values()[layout], dataPerBlock, groups, blocksPerSuperblock, appendable);
+    }
+
+    /**
+     * 文件头前 {@link #CHECKED_SIZE} 字节的 CRC32C
+     */
+    private static int checksum(byte[] raw) {
+        CRC32C crc = new CRC32C();
+        crc.update(raw, 0, CHECKED_SIZE);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 将 CRC32C 值编码为校验字
+     */
+    static byte[] encodeChecksum(int crc) {
+        return CHECKSUM_CODE.encode(ByteBuffer.allocate(4).putInt(crc).array());
+    }
+
+    /**
+     * 纠错并还原校验字中的 CRC32C 值
+     *
+     * @param word 校验字，会被原地纠错
+     * @throws StreamCorruptedException 校验字本身出现两位比特错误
+     */
+    static int decodeChecksum(byte[] word) throws StreamCorruptedException {
+        CHECKSUM_CODE.correct(word, 0);
+        byte[] crc = new byte[4];
+        CHECKSUM_CODE.decode(word, 0, crc, 0);
+        return ByteBuffer.wrap(crc).getInt();
+    }
+
+    /**
+     * 将有效数据总长度编码为长度字
+     */
+    static byte[] encodeLength(long length) {
+        return LENGTH_CODE.encode(ByteBuffer.allocate(8).putLong(length).array());
+    }
+
+    /**
+     * 纠错并还原长度字中的有效数据总长度
+     *
+     * @param word 长度字，会被原地纠错
+     * @throws StreamCorruptedException 长度字本身出现两位比特错误，或长度为负
+     */
+    static long decodeLength(byte[] word) throws StreamCorruptedException {
+        LENGTH_CODE.correct(word, 0);
+        byte[] length = new byte[8];
+        LENGTH_CODE.decode(word, 0, length, 0);
+        long value = ByteBuffer.wrap(length).getLong();
+        if (value < 0) {
+            throw new StreamCorruptedException("长度字已损坏！");
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,354 @@
+package fun.yanwk.playground.hamming;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * 条带化的多文件编解码
+ *
+ * @author YAN Wenkun
+ * 在 {@link HammingCodec} 的说明中，一组码块分散存储在 9 个内存颗粒上；这里是它在磁盘上的对应：
+ * 交织后的传输块由 codeSize × 8 个交织单元组成，第 j 个交织单元即是每组码块的第 j 号比特（一列），
+ * 把第 j 列写入第 j % N 个条带文件，N 个文件分别放在不同的磁盘上，读写带宽即可达到 N 块磁盘之和。
+ * 每个条带由一个专属线程读写，解码时各条带并行读取，传输块重组后再并行解码。
+ * 一个条带文件缺失时，其上的列在每组码块中都是位置已知的擦除，交给 {@link ChipkillDecoder} 恢复。
+ * 注意：SEC-DED 汉明码最多只能恢复 {@link ChipkillDecoder#MAX_ERASURES} 个擦除，
+ * 因此每个条带在一组码块中最多只能有 3 列，例如 (72,64) 码需要至少 24 个条带，才能容忍任意一个条带缺失。
+ * （真正的 Chipkill 使用以颗粒为符号的纠错码，不受此限制。）
+ * 每个条带文件以文件头开头：{@link StreamHeader}，其后是条带序号与条带数量（各 4 字节）。
+ */
+class StripedCodec {
+
+    static final int STRIPE_HEADER_SIZE = StreamHeader.SIZE + 8;
+    // 每个条带一次读写多少套传输块
+    private static final int BATCH_BLOCKS = 1024;
+
+    /**
+     * 条带 stripe 在每套传输块中有多少个交织单元（列）
+     */
+    static int unitsOf(int stripe, int stripes, int codeSize) {
+        final int units = codeSize * 8;
+        return units / stripes + (stripe < units % stripes ? 1 : 0);
+    }
+
+    /**
+     * 每个条带在一组码块中最多有多少个有效列（不计填充比特）。不超过 3 时才能容忍一个条带缺失。
+     */
+    static int maxColumnsPerStripe(LinearCode code, int stripes) {
+        final int[] count = new int[stripes];
+        for (int j = 0; j < code.codeSize() * 8; j++) {
+            if (code.column(j) != 0) {
+                count[j % stripes]++;
+            }
+        }
+        return IntStream.of(count).max().orElse(0);
+    }
+
+    /**
+     * 编码输入数据，按列写入 stripes.length 个条带文件（已存在的文件会被覆盖）。
+     *
+     * @param header 编码参数；交织组数量须为 8 的倍数（交织单元按字节对齐），暂不支持 CRC 校验与追加
+     */
+    public static void encodeStream(InputStream in, Path[] stripes, StreamHeader header) throws IOException {
+        if (header.groupsPerInterleaving % 8 != 0) {
+            throw new IllegalArgumentException("条带化要求交织组数量为 8 的倍数！");
+        }
+        if (header.blocksPerSuperblock != 0 || header.appendable) {
+            throw new IllegalArgumentException("条带化暂不支持 CRC 校验与追加！");
+        }
+        final SpecializedCodec codec = header.plan().codec();
+        final LinearCode code = codec.code();
+        final int groups = header.groupsPerInterleaving;
+        final int n = stripes.length;
+        final int width = groups / 8;
+        final int units = code.codeSize() * 8;
+
+        final FileChannel[] channels = new FileChannel[n];
+        final ExecutorService[] writers = new ExecutorService[n];
+        // 各条带写出队列中尚未写完的字节数，计入 JMX 的排队字节数；由写出任务或最后的 finally 归还，只归还一次
+        final List<AtomicLong> queued = new ArrayList<>();
+        try {
+            for (int s = 0; s < n; s++) {
+                channels[s] = FileChannel.open(stripes[s],
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                writers[s] = Executors.newSingleThreadExecutor();
+                write(channels[s], stripeHeader(header, s, n));
+            }
+
+            final byte[] plain = new byte[code.dataSize() * groups];
+            final byte[] encoded = new byte[code.codeSize() * groups];
+            final SpecializedCodec.Scratch scratch = codec.scratch();
+            List<Future<?>> inFlight = new ArrayList<>();
+            while (in.available() > 0) {
+                // 每批分配新的缓冲区，使编码与上一批的写出同时进行
+                final byte[][] batch = new byte[n][];
+                for (int s = 0; s < n; s++) {
+                    batch[s] = new byte[BATCH_BLOCKS * unitsOf(s, n, code.codeSize()) * width];
+                }
+                int blocks = 0;
+                while (blocks < BATCH_BLOCKS && in.available() > 0) {
+                    byte[] block = Encoder.encodeTransmissionBlock(in, codec, scratch, plain, encoded);
+                    for (int j = 0; j < units; j++) {
+                        final int s = j % n;
+                        final int offset = (blocks * unitsOf(s, n, code.codeSize()) + j / n) * width;
+                        System.arraycopy(block, j * width, batch[s], offset, width);
+                    }
+                    blocks++;
+                }
+
+                await(inFlight);
+                inFlight = new ArrayList<>();
+                queued.clear();
+                for (int s = 0; s < n; s++) {
+                    final FileChannel channel = channels[s];
+                    final ByteBuffer data = ByteBuffer.wrap(batch[s], 0, blocks * unitsOf(s, n, code.codeSize()) * width);
+                    final AtomicLong bytes = new AtomicLong(data.remaining());
+                    queued.add(bytes);
+                    Telemetry.STATS.queuedBytes.add(data.remaining());
+                    inFlight.add(writers[s].submit(() -> {
+                        try {
+                            write(channel, data);
+                        } finally {
+                            Telemetry.STATS.queuedBytes.add(-bytes.getAndSet(0));
+                        }
+                        return null;
+                    }));
+                }
+            }
+            await(inFlight);
+        } finally {
+            // 出错时 shutdownNow 会丢弃尚未开始的写出任务，其排队字节数在此归还
+            for (AtomicLong bytes : queued) {
+                Telemetry.STATS.queuedBytes.add(-bytes.getAndSet(0));
+            }
+            shutdown(writers);
+            close(channels);
+        }
+    }
+
+    /**
+     * 并行读取各条带，重组传输块并解码。stripes 中的路径须按条带序号排列；
+     * 至多一个条带可以缺失（文件不存在、路径为 null，或长度短于其他条带），此时其上的列按擦除恢复。
+     *
+     * @throws StreamCorruptedException 缺失或长度不足的条带超过一个、缺失条带的列数超过擦除上限、条带文件头不一致，或无法纠错
+     */
+    public static void decodeStream(Path[] stripes, OutputStream out) throws IOException {
+        final int n = stripes.length;
+        int missing = -1;
+        for (int s = 0; s < n; s++) {
+            if (stripes[s] == null || !Files.exists(stripes[s])) {
+                if (missing >= 0) {
+                    throw new StreamCorruptedException("缺失的条带超过一个，无法恢复！");
+                }
+                missing = s;
+            }
+        }
+
+        final FileChannel[] channels = new FileChannel[n];
+        final ExecutorService[] readers = new ExecutorService[n];
+        try {
+            StreamHeader header = null;
+            for (int s = 0; s < n; s++) {
+                if (s == missing) {
+                    continue;
+                }
+                channels[s] = FileChannel.open(stripes[s], StandardOpenOption.READ);
+                readers[s] = Executors.newSingleThreadExecutor();
+                final StreamHeader h = readStripeHeader(channels[s], s, n);
+                if (header == null) {
+                    header = h;
+                } else if (h.layout != header.layout || h.dataPerBlock != header.dataPerBlock
+                    || h.groupsPerInterleaving != header.groupsPerInterleaving) {
+                    throw new StreamCorruptedException("条带 " + s + " 的文件头与其他条带不一致！");
+                }
+            }
+            if (header == null) {
+                throw new StreamCorruptedException("没有可读的条带！");
+            }
+
+            final SpecializedCodec codec = header.plan().codec();
+            final LinearCode code = codec.code();
+            final int groups = header.groupsPerInterleaving;
+            final int width = groups / 8;
+            final int units = code.codeSize() * 8;
+            final int plainSize = codec.plainSize();
+            // 各条带的传输块数量应当一致。较短的条带（例如写入中断）按缺失处理，由擦除恢复，而不是截断整个输出
+            final long[] blockCounts = new long[n];
+            long blocksTotal = 0;
+            for (int s = 0; s < n; s++) {
+                if (s != missing) {
+                    final long perBlock = (long) unitsOf(s, n, code.codeSize()) * width;
+                    blockCounts[s] = (channels[s].size() - STRIPE_HEADER_SIZE) / perBlock;
+                    blocksTotal = Math.max(blocksTotal, blockCounts[s]);
+                }
+            }
+            for (int s = 0; s < n; s++) {
+                if (s != missing && blockCounts[s] < blocksTotal) {
+                    if (missing >= 0) {
+                        throw new StreamCorruptedException("条带 " + s + " 长度不足，且已有条带 " + missing + " 缺失或不完整，无法恢复！");
+                    }
+                    missing = s;
+                }
+            }
+
+            final List<Integer> erased = new ArrayList<>();
+            for (int j = missing; missing >= 0 && j < units; j += n) {
+                if (code.column(j) != 0) {
+                    erased.add(j);
+                }
+            }
+            if (erased.size() > ChipkillDecoder.MAX_ERASURES) {
+                throw new StreamCorruptedException("缺失的条带 " + missing + " 在每组码块中有 " + erased.size()
+                    + " 列，超过可恢复的上限 " + ChipkillDecoder.MAX_ERASURES + "！");
+            }
+
+            final int slices = Runtime.getRuntime().availableProcessors();
+            for (long done = 0; done < blocksTotal; ) {
+                final int blocks = (int) Math.min(BATCH_BLOCKS, blocksTotal - done);
+
+                // 1、各条带并行读取本批数据
+                final byte[][] batch = new byte[n][];
+                final List<Future<?>> reads = new ArrayList<>();
+                for (int s = 0; s < n; s++) {
+                    batch[s] = new byte[blocks * unitsOf(s, n, code.codeSize()) * width];
+                    if (s != missing) {
+                        final FileChannel channel = channels[s];
+                        final ByteBuffer data = ByteBuffer.wrap(batch[s]);
+                        final long position = STRIPE_HEADER_SIZE + done * unitsOf(s, n, code.codeSize()) * width;
+                        reads.add(readers[s].submit(() -> {
+                            read(channel, data, position);
+                            return null;
+                        }));
+                    }
+                }
+                await(reads);
+
+                // 2、重组传输块并解码，按 CPU 核心数分片并行，缺失条带的列保持为 0，由擦除恢复
+                final byte[] decoded = new byte[blocks * plainSize];
+                try {
+                    IntStream.range(0, slices).parallel().forEach(slice -> {
+                        final byte[] block = new byte[code.codeSize() * groups];
+                        final byte[] plain = new byte[plainSize];
+                        final SpecializedCodec.Scratch scratch = codec.scratch();
+                        final ChipkillDecoder erasure = erased.isEmpty() ? null : new ChipkillDecoder(code, groups);
+                        if (erasure != null) {
+                            erased.forEach(erasure::markErased);
+                        }
+                        for (int b = slice; b < blocks; b += slices) {
+                            for (int j = 0; j < units; j++) {
+                                final int s = j % n;
+                                final int offset = (b * unitsOf(s, n, code.codeSize()) + j / n) * width;
+                                System.arraycopy(batch[s], offset, block, j * width, width);
+                            }
+                            try {
+                                if (erasure != null) {
+                                    erasure.decodeTransmissionBlock(block, plain);
+                                } else {
+                                    codec.decode(block, plain, scratch);
+                                }
+                            } catch (StreamCorruptedException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                            System.arraycopy(plain, 0, decoded, b * plainSize, plainSize);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+
+                out.write(decoded);
+                done += blocks;
+            }
+        } finally {
+            shutdown(readers);
+            close(channels);
+        }
+    }
+
+    private static ByteBuffer stripeHeader(StreamHeader header, int stripe, int stripes) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream(STRIPE_HEADER_SIZE);
+        header.write(bos);
+        return ByteBuffer.allocate(STRIPE_HEADER_SIZE).put(bos.toByteArray()).putInt(stripe).putInt(stripes).flip();
+    }
+
+    private static StreamHeader readStripeHeader(FileChannel channel, int stripe, int stripes) throws IOException {
+        final ByteBuffer raw = ByteBuffer.allocate(STRIPE_HEADER_SIZE);
+        read(channel, raw, 0);
+        final StreamHeader header = StreamHeader.read(new BufferedInputStream(
+            new ByteArrayInputStream(raw.array(), 0, StreamHeader.SIZE)));
+        raw.position(StreamHeader.SIZE);
+        if (header == null || raw.getInt() != stripe || raw.getInt() != stripes) {
+            throw new StreamCorruptedException("条带 " + stripe + " 的文件头无效或序号不符！");
+        }
+        return header;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
+    private static void read(FileChannel channel, ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) {
+            if (channel.read(data, position + data.position()) < 0) {
+                throw new StreamCorruptedException("条带文件比预期的短，文件可能被截断！");
+            }
+        }
+    }
+
+    /**
+     * 等待一批读写完成，把其中的 IO 异常原样抛出
+     */
+    private static void await(List<Future<?>> futures) throws IOException {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("条带读写被中断！", e);
+            }
+        }
+    }
+
+    private static void shutdown(ExecutorService[] executors) {
+        for (ExecutorService executor : executors) {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static void close(FileChannel[] channels) throws IOException {
+        for (FileChannel channel : channels) {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+}
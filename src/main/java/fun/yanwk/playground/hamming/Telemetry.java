@@ -0,0 +1,211 @@
+package fun.yanwk.playground.hamming;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 运行观测：JFR 事件与 JMX 计数
+ *
+ * @author YAN Wenkun
+ * JFR 事件默认关闭，关闭时 JIT 会把事件对象的创建与提交整个消除，不影响吞吐量；
+ * 需要时用 jcmd JFR.start 或 JDK Mission Control 打开 fun.yanwk.playground.hamming.* 事件即可。
+ * JMX 计数使用 LongAdder，每套传输块只累加一次，多线程下也不会互相争抢。
+ */
+final class Telemetry {
+
+    static final String OBJECT_NAME = "fun.yanwk.playground.hamming:type=CodecStats";
+
+    // 编解码的各个阶段
+    static final String STAGE_READ = "read";
+    static final String STAGE_INTERLEAVE = "interleave";
+    static final String STAGE_CODE = "code";
+    static final String STAGE_WRITE = "write";
+
+    static final Stats STATS = new Stats();
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(STATS, new ObjectName(OBJECT_NAME));
+        } catch (JMException | SecurityException e) {
+            // 重复注册（例如被多个类加载器加载）或无权限时放弃注册，不影响编解码
+        }
+    }
+
+    private Telemetry() {
+    }
+
+    /**
+     * 编解码一个阶段的耗时
+     */
+    @Name("fun.yanwk.playground.hamming.Stage")
+    @Label("Codec Stage")
+    @Description("一套传输块在某个阶段（read、interleave、code、write）的耗时")
+    @Category("Hamming Codec")
+    @Enabled(false)
+    @StackTrace(false)
+    static class StageEvent extends Event {
+        @Label("Stage")
+        String stage;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    /**
+     * 一次纠错（或纠错失败）
+     */
+    @Name("fun.yanwk.playground.hamming.Correction")
+    @Label("Codec Correction")
+    @Description("码块中出现比特错误：已纠正，或无法纠错")
+    @Category("Hamming Codec")
+    @Enabled(false)
+    @StackTrace(false)
+    static class CorrectionEvent extends Event {
+        @Label("Bit Address")
+        @Description("出错比特在码块中的地址，无法纠错时为 -1")
+        int bitAddress;
+
+        @Label("Uncorrectable")
+        boolean uncorrectable;
+    }
+
+    /**
+     * 开始计时一个阶段，与 {@link #endStage} 配对使用
+     */
+    static StageEvent beginStage(String stage) {
+        StageEvent event = new StageEvent();
+        event.begin();
+        event.stage = stage;
+        return event;
+    }
+
+    static void endStage(StageEvent event, long bytes) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    /**
+     * 记录一次纠错
+     *
+     * @param bitAddress 被纠正的比特地址；-1 表示无法纠错
+     */
+    static void correction(int bitAddress) {
+        if (bitAddress < 0) {
+            STATS.uncorrectableBlocks.increment();
+        } else {
+            STATS.correctedBits.increment();
+        }
+        CorrectionEvent event = new CorrectionEvent();
+        if (event.shouldCommit()) {
+            event.bitAddress = bitAddress;
+            event.uncorrectable = bitAddress < 0;
+            event.commit();
+        }
+    }
+
+    /**
+     * 记录一套传输块的输入输出
+     */
+    static void block(long bytesIn, long bytesOut) {
+        STATS.bytesIn.add(bytesIn);
+        STATS.bytesOut.add(bytesOut);
+        STATS.blocks.increment();
+    }
+
+    /**
+     * JMX 计数的实现
+     */
+    static final class Stats implements CodecStatsMXBean {
+        final LongAdder bytesIn = new LongAdder();
+        final LongAdder bytesOut = new LongAdder();
+        final LongAdder blocks = new LongAdder();
+        final LongAdder correctedBits = new LongAdder();
+        final LongAdder uncorrectableBlocks = new LongAdder();
+        final LongAdder checksumFailures = new LongAdder();
+        final LongAdder jammedBits = new LongAdder();
+        final LongAdder queuedBytes = new LongAdder();
+
+        // 计数的起点（进程启动或上次 reset），只由 reset 改写
+        private volatile long startNanos = System.nanoTime();
+
+        @Override
+        public long getBytesIn() {
+            return bytesIn.sum();
+        }
+
+        @Override
+        public long getBytesOut() {
+            return bytesOut.sum();
+        }
+
+        @Override
+        public long getBlocks() {
+            return blocks.sum();
+        }
+
+        @Override
+        public double getBlocksPerSecond() {
+            final long elapsed = getElapsedNanos();
+            return blocks.sum() / Math.max(1e-9, elapsed / 1e9);
+        }
+
+        @Override
+        public long getElapsedNanos() {
+            return System.nanoTime() - startNanos;
+        }
+
+        @Override
+        public long getCorrectedBits() {
+            return correctedBits.sum();
+        }
+
+        @Override
+        public long getUncorrectableBlocks() {
+            return uncorrectableBlocks.sum();
+        }
+
+        @Override
+        public long getChecksumFailures() {
+            return checksumFailures.sum();
+        }
+
+        @Override
+        public long getJammedBits() {
+            return jammedBits.sum();
+        }
+
+        @Override
+        public long getQueuedBytes() {
+            return queuedBytes.sum();
+        }
+
+        @Override
+        public synchronized void reset() {
+            bytesIn.reset();
+            bytesOut.reset();
+            blocks.reset();
+            correctedBits.reset();
+            uncorrectableBlocks.reset();
+            checksumFailures.reset();
+            jammedBits.reset();
+            // queuedBytes 是当前值而非累计值，不清零
+            startNanos = System.nanoTime();
+        }
+    }
+
+}
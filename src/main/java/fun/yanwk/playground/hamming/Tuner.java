@@ -0,0 +1,217 @@
+package fun.yanwk.playground.hamming;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 码块大小与交织深度的自动调优器
+ *
+ * @author YAN Wenkun
+ * 码块越大，冗余越少，但一组码块中出现两位错误的概率越高；交织越深，越能抵抗连续干扰，但传输块越大、延迟越高。
+ * 调优器根据噪音模型估算每种（码块有效数据长度, 交织组数量）组合的残余失败率，
+ * 在满足可靠性目标的组合中实测编解码吞吐量，按“吞吐量 × 存储效率”选出最佳组合。
+ */
+class Tuner {
+
+    // 候选的码块有效数据长度，单位字节
+    static final int[] CANDIDATE_DATA_PER_BLOCK = {1, 2, 4, 8, 16, 32, 64};
+    // 候选的交织组数量
+    static final int[] CANDIDATE_GROUPS = {8, 16, 32, 64};
+
+    /**
+     * 噪音模型，与 {@link Jammer} 的参数含义相同
+     */
+    static class ErrorProfile {
+        // 总的比特翻转概率
+        final double probability;
+        // 最多连续翻转多少位比特
+        final int maxBurst;
+
+        ErrorProfile(double probability, int maxBurst) {
+            this.probability = probability;
+            this.maxBurst = Math.max(1, maxBurst);
+        }
+
+        /**
+         * 由干扰器的配置得到噪音模型
+         */
+        static ErrorProfile fromJammer(double probability, int maxBurst) {
+            return new ErrorProfile(probability, maxBurst);
+        }
+
+        /**
+         * 由解码时观测到的统计数据得到噪音模型
+         *
+         * @param correctedBits 纠正的比特数
+         * @param totalBits     解码的总比特数（编码后）
+         * @param maxBurst      观测到（或估计）的最长连续错误
+         */
+        static ErrorProfile observed(long correctedBits, long totalBits, int maxBurst) {
+            return new ErrorProfile((double) correctedBits / totalBits, maxBurst);
+        }
+
+        /**
+         * 统计一份（可能受过干扰的）编码流中的比特错误，得到噪音模型。
+         * 只算校验子、不纠错：校验子不为 0 的码块计为一位错误（两位错误也只计一位，略为低估）；
+         * 交织后一次不超过 G 位的连续干扰恰好命中 G 组码块中的不同组，因此以单套传输块中出错码块数的最大值估计最长连续错误。
+         * 不足一套传输块的末尾不计入。
+         *
+         * @param in 编码后的数据，不含文件头、校验字与长度字
+         */
+        static ErrorProfile measure(InputStream in, LinearCode code, int groups) throws IOException {
+            final SpecializedCodec codec = CodecPlan.codec(code, groups);
+            final SpecializedCodec.Scratch scratch = codec.scratch();
+            final byte[] buffer = new byte[codec.encodedSize()];
+            final byte[] decoded = new byte[codec.plainSize()];
+
+            long errors = 0;
+            long totalBits = 0;
+            int maxBurst = 1;
+            while (in.readNBytes(buffer, 0, buffer.length) == buffer.length) {
+                int erroneous = 0;
+                for (int syndrome : codec.decodeUncorrected(buffer, decoded, scratch)) {
+                    if (syndrome != 0) {
+                        erroneous++;
+                    }
+                }
+                errors += erroneous;
+                totalBits += buffer.length * 8L;
+                maxBurst = Math.max(maxBurst, erroneous);
+            }
+            if (totalBits == 0) {
+                throw new IllegalArgumentException("编码数据不足一套传输块，无法统计噪音！");
+            }
+            return observed(errors, totalBits, maxBurst);
+        }
+
+        /**
+         * 每个比特位置上“开始一次连续干扰”的概率，计算方法同 {@link Jammer#distortStream}
+         */
+        double burstRate() {
+            return (maxBurst < 2) ? probability : probability / ((1 + maxBurst) / 2.0);
+        }
+    }
+
+    /**
+     * 一种候选组合的评估结果
+     */
+    static class Candidate {
+        final int dataPerBlock;
+        final int groupsPerInterleaving;
+        // 每字节有效数据的残余失败率
+        final double residualFailureRate;
+        // 冗余率：码块大小 ÷ 有效数据长度 - 1
+        final double overhead;
+        // 编码 + 解码的吞吐量，单位 MB/s（按有效数据计）
+        final double throughput;
+
+        Candidate(int dataPerBlock, int groupsPerInterleaving, double residualFailureRate, double overhead, double throughput) {
+            this.dataPerBlock = dataPerBlock;
+            this.groupsPerInterleaving = groupsPerInterleaving;
+            this.residualFailureRate = residualFailureRate;
+            this.overhead = overhead;
+            this.throughput = throughput;
+        }
+
+        /**
+         * 综合得分：吞吐量 × 存储效率（有效数据 ÷ 编码后数据）
+         */
+        double score() {
+            return throughput / (1 + overhead);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("dataPerBlock=%d, groups=%d, 残余失败率=%.3e, 冗余率=%.1f%%, 吞吐量=%.2f MB/s",
+                dataPerBlock, groupsPerInterleaving, residualFailureRate, overhead * 100, throughput);
+        }
+    }
+
+    /**
+     * 估算每字节有效数据的残余失败率（一组码块出现两位及以上错误，即无法纠错或乱纠错）。
+     * <p>
+     * 设每个比特开始一次连续干扰的概率为 r，干扰长度 L 在 [1, maxBurst] 上均匀分布。
+     * 交织后连续的 G 个比特分属 G 组不同的码块，因此一次干扰会命中 min(L, G) 组码块各一次，
+     * 当 L > G 时还会使其中 min(G, L - G) 组码块各被命中两次。对一组 n 比特的码块：
+     * 被命中次数的期望 λ1 = n·r·E[min(L, G)]，被单次干扰命中两次的概率 λ2 = n·r·E[min(G, max(0, L - G))]，
+     * 失败概率 ≈ P(Poisson(λ1) ≥ 2) + λ2。
+     */
+    static double residualFailureRate(ErrorProfile profile, int dataPerBlock, int groups) {
+        final int codeBits = LinearCode.hammingCodeSize(dataPerBlock) * 8;
+        final double r = profile.burstRate();
+
+        double hits = 0;
+        double doubleHits = 0;
+        for (int length = 1; length <= profile.maxBurst; length++) {
+            hits += Math.min(length, groups);
+            doubleHits += Math.min(groups, Math.max(0, length - groups));
+        }
+        final double lambda1 = codeBits * r * hits / profile.maxBurst;
+        final double lambda2 = codeBits * r * doubleHits / profile.maxBurst;
+
+        // P(Poisson(λ) ≥ 2) = 1 - e^-λ·(1 + λ)，λ 很小时用级数展开避免相消误差
+        final double atLeastTwo = lambda1 < 1e-4
+            ? lambda1 * lambda1 / 2 - lambda1 * lambda1 * lambda1 / 3
+            : 1 - Math.exp(-lambda1) * (1 + lambda1);
+        final double perCodeword = Math.min(1.0, atLeastTwo + lambda2);
+        return perCodeword / dataPerBlock;
+    }
+
+    /**
+     * 在内存中实测一种组合的编解码吞吐量。
+     *
+     * @param sampleSize 测试数据大小，单位字节
+     * @return 吞吐量，单位 MB/s（按有效数据计，编码与解码各算一次）
+     */
+    static double benchmark(int dataPerBlock, int groups, int sampleSize) throws IOException {
+        final LinearCode code = CodecPlan.code(StreamHeader.Layout.POSITIONAL, dataPerBlock);
+        final int blockData = dataPerBlock * groups;
+        final byte[] sample = new byte[Math.max(blockData, sampleSize / blockData * blockData)];
+        new Random(0).nextBytes(sample);
+
+        // 先预热一轮，让 JIT 完成编译
+        runOnce(code, groups, sample);
+        final long start = System.nanoTime();
+        runOnce(code, groups, sample);
+        final long elapsed = Math.max(1, System.nanoTime() - start);
+
+        return sample.length * 2 / 1e6 / (elapsed / 1e9);
+    }
+
+    private static void runOnce(LinearCode code, int groups, byte[] sample) throws IOException {
+        var encoded = new ByteArrayOutputStream();
+        Encoder.encodeStream(new ByteArrayInputStream(sample), encoded, code, groups);
+        Decoder.decodeStream(new ByteArrayInputStream(encoded.toByteArray()), OutputStream.nullOutputStream(), code, groups);
+    }
+
+    /**
+     * 评估全部候选组合，只对满足可靠性目标的组合实测吞吐量。
+     *
+     * @param targetFailureRate 每字节有效数据可接受的残余失败率
+     * @return 满足目标的组合，按综合得分从高到低排列
+     */
+    static List<Candidate> evaluate(ErrorProfile profile, double targetFailureRate, int sampleSize) throws IOException {
+        List<Candidate> result = new ArrayList<>();
+        for (int dataPerBlock : CANDIDATE_DATA_PER_BLOCK) {
+            for (int groups : CANDIDATE_GROUPS) {
+                double failureRate = residualFailureRate(profile, dataPerBlock, groups);
+                if (failureRate > targetFailureRate) {
+                    continue;
+                }
+                double overhead = (double) LinearCode.hammingCodeSize(dataPerBlock) / dataPerBlock - 1;
+                double throughput = benchmark(dataPerBlock, groups, sampleSize);
+                result.add(new Candidate(dataPerBlock, groups, failureRate, overhead, throughput));
+            }
+        }
+        result.sort(Comparator.comparingDouble(Candidate::score).reversed());
+        return result;
+    }
+
+}
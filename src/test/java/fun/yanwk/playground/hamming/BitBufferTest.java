@@ -0,0 +1,103 @@
+package fun.yanwk.playground.hamming;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BitBufferTest {
+
+    private static boolean bit(byte[] bytes, int bitAddr) {
+        return (bytes[bitAddr / 8] & (0x80 >>> (bitAddr % 8))) != 0;
+    }
+
+    @Test
+    void testTranspose8x8() {
+        // 单位矩阵的转置是其本身
+        assertEquals(0x8040201008040201L, BitBuffer.transpose8x8(0x8040201008040201L));
+        // 第 0 行全 1 转置为第 0 列全 1
+        assertEquals(0x8080808080808080L, BitBuffer.transpose8x8(0xFF00000000000000L));
+        // 转置两次即还原
+        long x = 0x0123456789ABCDEFL;
+        assertEquals(x, BitBuffer.transpose8x8(BitBuffer.transpose8x8(x)));
+    }
+
+    @Test
+    void testLoadStoreSameAsUtils() {
+        var bytes = new byte[21]; // 不是 8 的整数倍
+        new Random(38).nextBytes(bytes);
+        var buffer = BitBuffer.of(bytes);
+        assertEquals(168, buffer.size());
+        for (int bit = 0; bit < 168; bit++) {
+            assertEquals(bit(bytes, bit), buffer.get(bit), "bit " + bit);
+        }
+        assertArrayEquals(bytes, buffer.toByteArray());
+    }
+
+    @Test
+    void testFieldAcrossWords() {
+        var buffer = new BitBuffer(200);
+        buffer.put(60, 10, 0b1011001110);
+        assertEquals(0b1011001110, buffer.get(60, 10));
+        assertEquals(0, buffer.get(0, 60));
+        assertEquals(0, buffer.get(70, 64));
+
+        // 覆盖写入只改动指定的比特
+        buffer.flipRange(0, 200);
+        buffer.put(100, 64, 0x0123456789ABCDEFL);
+        assertEquals(0x0123456789ABCDEFL, buffer.get(100, 64));
+        assertEquals(-1L >>> 4, buffer.get(0, 60));
+        assertEquals(~0b1011001110 & 0x3FF, buffer.get(60, 10));
+        assertEquals((1L << 30) - 1, buffer.get(70, 30));
+        assertEquals(-1L >>> 28, buffer.get(164, 36));
+
+        buffer.xor(100, 64, 0x0123456789ABCDEFL);
+        assertEquals(0, buffer.get(100, 64));
+    }
+
+    @Test
+    void testRanges() {
+        var bytes = new byte[40];
+        new Random(39).nextBytes(bytes);
+        var buffer = BitBuffer.of(bytes);
+        int[][] ranges = {{0, 320}, {3, 5}, {5, 64}, {64, 128}, {63, 129}, {70, 300}, {10, 10}};
+        for (int[] r : ranges) {
+            int expected = 0;
+            for (int bit = r[0]; bit < r[1]; bit++) {
+                expected += bit(bytes, bit) ? 1 : 0;
+            }
+            assertEquals(expected, buffer.popcount(r[0], r[1]));
+            assertEquals(expected & 1, buffer.parity(r[0], r[1]));
+
+            var flipped = bytes.clone();
+            for (int bit = r[0]; bit < r[1]; bit++) {
+                Utils.flipBitInArray(flipped, bit);
+            }
+            var copy = BitBuffer.of(bytes);
+            copy.flipRange(r[0], r[1]);
+            assertArrayEquals(flipped, copy.toByteArray());
+
+            var cleared = BitBuffer.of(bytes);
+            cleared.clearRange(r[0], r[1]);
+            assertEquals(0, cleared.popcount(r[0], r[1]));
+            assertEquals(buffer.popcount(0, 320) - expected, cleared.popcount(0, 320));
+        }
+    }
+
+    @Test
+    void testOverlappingCopy() {
+        var bytes = new byte[32];
+        new Random(40).nextBytes(bytes);
+        var reference = BitBuffer.of(bytes);
+        for (int[] c : new int[][]{{3, 77, 150}, {77, 3, 150}, {0, 1, 255}, {1, 0, 255}}) {
+            var buffer = BitBuffer.of(bytes);
+            BitBuffer.copy(buffer, c[0], buffer, c[1], c[2]);
+            for (int k = 0; k < c[2]; k++) {
+                assertEquals(reference.get(c[0] + k), buffer.get(c[1] + k), Arrays.toString(c) + " bit " + k);
+            }
+        }
+    }
+
+}
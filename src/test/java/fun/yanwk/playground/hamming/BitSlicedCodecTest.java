@@ -0,0 +1,101 @@
+package fun.yanwk.playground.hamming;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BitSlicedCodecTest {
+
+    @Test
+    void testEncodeStreamSameAsScalar() throws IOException {
+        var random = new Random(42);
+        for (int groups : new int[]{8, 16, 32, 64}) {
+            for (int dataPerBlock : new int[]{1, 2, 7, 8, 16}) {
+                var sample = new byte[1000];
+                random.nextBytes(sample);
+
+                var expected = new ByteArrayOutputStream();
+                Encoder.encodeStream(new ByteArrayInputStream(sample), expected, dataPerBlock, groups);
+                var actual = new ByteArrayOutputStream();
+                BitSlicedCodec.encodeStream(new ByteArrayInputStream(sample), actual, dataPerBlock, groups);
+
+                assertArrayEquals(expected.toByteArray(), actual.toByteArray(), "groups=" + groups + ", dataPerBlock=" + dataPerBlock);
+            }
+        }
+    }
+
+    @Test
+    void testDecodeStreamCorrectsSingleErrors() throws IOException {
+        var random = new Random(7);
+        for (int groups : new int[]{8, 16, 32, 64}) {
+            var sample = new byte[8 * groups * 3];
+            random.nextBytes(sample);
+            var encoded = new ByteArrayOutputStream();
+            BitSlicedCodec.encodeStream(new ByteArrayInputStream(sample), encoded, 8, groups);
+
+            // 连续翻转 groups 个比特，交织后每组码块只错一位
+            var distorted = encoded.toByteArray();
+            for (int bitAddr = 100; bitAddr < 100 + groups; bitAddr++) {
+                Utils.flipBitInArray(distorted, bitAddr);
+            }
+
+            var expected = new ByteArrayOutputStream();
+            Decoder.decodeStream(new ByteArrayInputStream(distorted), expected, 8, groups);
+            var actual = new ByteArrayOutputStream();
+            BitSlicedCodec.decodeStream(new ByteArrayInputStream(distorted), actual, 8, groups);
+
+            assertArrayEquals(sample, actual.toByteArray());
+            assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+        }
+    }
+
+    @Test
+    void testDecodeStreamShortLastBlock() throws IOException {
+        // 第二套传输块全为 0 且被截断：不足的部分按 0 补齐，而不是沿用第一套传输块的残留数据
+        var sample = new byte[128];
+        var random = new Random(26);
+        for (int i = 0; i < 64; i++) {
+            sample[i] = (byte) random.nextInt();
+        }
+        var encoded = new ByteArrayOutputStream();
+        BitSlicedCodec.encodeStream(new ByteArrayInputStream(sample), encoded, 8, 8);
+        var truncated = Arrays.copyOf(encoded.toByteArray(), 72 + 40);
+
+        var expected = new ByteArrayOutputStream();
+        Decoder.decodeStream(new ByteArrayInputStream(truncated), expected, 8, 8);
+        var actual = new ByteArrayOutputStream();
+        BitSlicedCodec.decodeStream(new ByteArrayInputStream(truncated), actual, 8, 8);
+
+        assertArrayEquals(sample, actual.toByteArray());
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+
+    @Test
+    void testDecodeStreamDoubleError() throws IOException {
+        var encoded = new ByteArrayOutputStream();
+        BitSlicedCodec.encodeStream(new ByteArrayInputStream(new byte[64]), encoded, 8, 8);
+        var distorted = encoded.toByteArray();
+        // 同一组码块（第 0 组）的第 3、5 号比特
+        Utils.flipBitInArray(distorted, 3 * 8);
+        Utils.flipBitInArray(distorted, 5 * 8);
+
+        assertThrows(StreamCorruptedException.class, () ->
+            BitSlicedCodec.decodeStream(new ByteArrayInputStream(distorted), new ByteArrayOutputStream(), 8, 8)
+        );
+    }
+
+    @Test
+    void testUnsupportedGroups() {
+        assertFalse(BitSlicedCodec.supports(9));
+        assertThrows(IllegalArgumentException.class, () ->
+            BitSlicedCodec.encodeStream(new ByteArrayInputStream(new byte[8]), new ByteArrayOutputStream(), 8, 9)
+        );
+    }
+}
@@ -0,0 +1,262 @@
+package fun.yanwk.playground.hamming;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChannelCodecTest {
+
+    /**
+     * 每次最多写入 5 字节、且每隔一次写入 0 字节的“慢”通道，用于模拟背压
+     */
+    static class SlowChannel implements WritableByteChannel {
+        final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        boolean stall = false;
+
+        @Override
+        public int write(ByteBuffer src) {
+            stall = !stall;
+            if (stall) {
+                return 0;
+            }
+            int n = Math.min(5, src.remaining());
+            byte[] bytes = new byte[n];
+            src.get(bytes);
+            sink.write(bytes, 0, n);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    void testPartialFeedWithBackpressure() throws IOException {
+        var sample = new byte[1000];
+        new Random(11).nextBytes(sample);
+        var expected = new ByteArrayOutputStream();
+        Encoder.encodeStream(new ByteArrayInputStream(sample), expected, 8, 8);
+
+        var codec = new ChannelCodec(ChannelCodec.Mode.ENCODE, CodecPlan.of(StreamHeader.Layout.POSITIONAL, 8, 8), 2);
+        var channel = new SlowChannel();
+        var src = ByteBuffer.wrap(sample);
+        boolean sawBackpressure = false;
+        while (src.hasRemaining()) {
+            // 每次只给 7 字节，不足一套传输块
+            var chunk = src.slice();
+            chunk.limit(Math.min(7, chunk.remaining()));
+            int accepted = codec.feed(chunk);
+            src.position(src.position() + accepted);
+            sawBackpressure |= accepted == 0;
+            codec.flushTo(channel);
+        }
+        while (!codec.finish()) {
+            codec.flushTo(channel);
+        }
+        while (!codec.flushTo(channel)) {
+            // 直到全部写出
+        }
+
+        assertTrue(sawBackpressure);
+        assertArrayEquals(expected.toByteArray(), channel.sink.toByteArray());
+    }
+
+    @Test
+    void testDecodeCorrectsErrors() throws IOException {
+        var sample = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789he".getBytes();
+        var encoded = new ByteArrayOutputStream();
+        Encoder.encodeStream(new ByteArrayInputStream(sample), encoded, 8, 8);
+        var distorted = encoded.toByteArray();
+        for (int bitAddr = 40; bitAddr < 48; bitAddr++) {
+            Utils.flipBitInArray(distorted, bitAddr);
+        }
+
+        var codec = new ChannelCodec(ChannelCodec.Mode.DECODE, CodecPlan.of(StreamHeader.Layout.POSITIONAL, 8, 8), 1);
+        var bos = new ByteArrayOutputStream();
+        var out = Channels.newChannel(bos);
+        var src = ByteBuffer.wrap(distorted);
+        while (src.hasRemaining()) {
+            var chunk = src.slice();
+            chunk.limit(Math.min(13, chunk.remaining()));
+            src.position(src.position() + codec.feed(chunk));
+            codec.flushTo(out);
+        }
+        codec.finish();
+        codec.flushTo(out);
+
+        assertEquals(1, codec.blocks());
+        assertArrayEquals(sample, bos.toByteArray());
+
+        // 结束后空输入是无害的，非空输入则是调用者的错误
+        assertEquals(0, codec.feed(ByteBuffer.allocate(0)));
+        assertThrows(IllegalStateException.class, () -> codec.feed(ByteBuffer.allocate(1)));
+    }
+
+    @Test
+    void testQueuedBytesReleased() throws IOException {
+        final long baseline = Telemetry.STATS.getQueuedBytes();
+        var plan = CodecPlan.of(StreamHeader.Layout.POSITIONAL, 8, 8);
+
+        // 放弃连接：待写数据尚未写出即关闭
+        var encoder = new ChannelCodec(ChannelCodec.Mode.ENCODE, plan, 4);
+        encoder.feed(ByteBuffer.wrap(new byte[64 * 3]));
+        assertEquals(baseline + 72 * 3, Telemetry.STATS.getQueuedBytes());
+        encoder.close();
+        assertEquals(baseline, Telemetry.STATS.getQueuedBytes());
+        assertEquals(0, encoder.pendingBytes());
+        encoder.close();
+        assertEquals(baseline, Telemetry.STATS.getQueuedBytes());
+
+        // 无法纠错：第 1 套传输块的第 0 组码块错两位，已解码的第 0 套随之丢弃
+        var encoded = new ByteArrayOutputStream();
+        Encoder.encodeStream(new ByteArrayInputStream(new byte[64 * 2]), encoded, 8, 8);
+        var distorted = encoded.toByteArray();
+        Utils.flipBitInArray(distorted, 72 * 8 + 3 * 8);
+        Utils.flipBitInArray(distorted, 72 * 8 + 5 * 8);
+        var decoder = new ChannelCodec(ChannelCodec.Mode.DECODE, plan, 4);
+        assertThrows(StreamCorruptedException.class, () -> decoder.feed(ByteBuffer.wrap(distorted)));
+        assertEquals(baseline, Telemetry.STATS.getQueuedBytes());
+        assertTrue(decoder.isFinished());
+    }
+
+    @Test
+    void testLoopbackSocket() throws Exception {
+        var sample = new byte[200_000];
+        new Random(12).nextBytes(sample);
+        var expected = new ByteArrayOutputStream();
+        Encoder.encodeStream(new ByteArrayInputStream(sample), expected, 8, 8);
+
+        byte[] received = echoEncode(sample, 8, 8);
+        assertArrayEquals(expected.toByteArray(), received);
+    }
+
+    @Test
+    @Disabled
+    void benchmark() throws Exception {
+        // 单套传输块的延迟：从 feed 到写出
+        var codec = new ChannelCodec(ChannelCodec.Mode.ENCODE, CodecPlan.of(StreamHeader.Layout.POSITIONAL, 8, 8), 1);
+        var sink = Channels.newChannel(ByteArrayOutputStream.nullOutputStream());
+        var block = new byte[64];
+        final int rounds = 200_000;
+        for (int i = 0; i < rounds; i++) { // 预热
+            codec.feed(ByteBuffer.wrap(block));
+            codec.flushTo(sink);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            codec.feed(ByteBuffer.wrap(block));
+            codec.flushTo(sink);
+        }
+        System.out.printf("每套传输块延迟：%.1f ns%n", (System.nanoTime() - start) / (double) rounds);
+
+        // 经由本地回环的最大吞吐量
+        var sample = new byte[64 << 20];
+        new Random(13).nextBytes(sample);
+        start = System.nanoTime();
+        echoEncode(sample, 8, 8);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("回环吞吐量：%.2f MB/s%n", sample.length / 1e6 / seconds);
+    }
+
+    /**
+     * 客户端把有效数据发给本地回环上的服务端，服务端用 Selector 驱动的非阻塞编解码器编码后原路发回。
+     * 客户端的发送与接收分属两个线程，服务端写不动时会暂停读取，从而把背压传回客户端。
+     */
+    private static byte[] echoEncode(byte[] sample, int dataPerBlock, int groups) throws Exception {
+        try (var server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            var client = SocketChannel.open(server.getLocalAddress());
+
+            var sender = CompletableFuture.runAsync(() -> {
+                try {
+                    var src = ByteBuffer.wrap(sample);
+                    var random = new Random(14);
+                    while (src.hasRemaining()) {
+                        var chunk = src.slice();
+                        chunk.limit(Math.min(1 + random.nextInt(3000), chunk.remaining()));
+                        src.position(src.position() + client.write(chunk));
+                    }
+                    client.shutdownOutput();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            var receiver = CompletableFuture.supplyAsync(() -> {
+                try {
+                    var bos = new ByteArrayOutputStream();
+                    var buffer = ByteBuffer.allocate(8192);
+                    while (client.read(buffer) != -1) {
+                        bos.write(buffer.array(), 0, buffer.position());
+                        buffer.clear();
+                    }
+                    return bos.toByteArray();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            try (var conn = server.accept(); var selector = Selector.open()) {
+                conn.configureBlocking(false);
+                var key = conn.register(selector, SelectionKey.OP_READ);
+                var codec = new ChannelCodec(ChannelCodec.Mode.ENCODE, CodecPlan.of(StreamHeader.Layout.POSITIONAL, dataPerBlock, groups), 16);
+                var readBuffer = ByteBuffer.allocate(1000);
+                boolean eof = false;
+
+                while (!(codec.isFinished() && codec.pendingBytes() == 0)) {
+                    selector.select(1000);
+                    selector.selectedKeys().clear();
+                    if (!eof && key.isReadable() && conn.read(readBuffer) == -1) {
+                        eof = true;
+                    }
+                    if (!codec.isFinished()) {
+                        readBuffer.flip();
+                        codec.feed(readBuffer);
+                        readBuffer.compact();
+                        if (eof && readBuffer.position() == 0) {
+                            codec.finish();
+                        }
+                    }
+                    codec.flushTo(conn);
+
+                    int ops = 0;
+                    if (!eof && codec.canAccept() && readBuffer.hasRemaining()) {
+                        ops |= SelectionKey.OP_READ;
+                    }
+                    if (codec.pendingBytes() > 0) {
+                        ops |= SelectionKey.OP_WRITE;
+                    }
+                    key.interestOps(ops);
+                }
+                conn.shutdownOutput();
+            }
+
+            sender.get();
+            byte[] received = receiver.get();
+            client.close();
+            return received;
+        }
+    }
+}
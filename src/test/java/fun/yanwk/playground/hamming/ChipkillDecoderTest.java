@@ -0,0 +1,77 @@
+package fun.yanwk.playground.hamming;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChipkillDecoderTest {
+
+    @Test
+    void testStuckColumnWithRandomError() throws IOException {
+        var sample = new byte[64 * 2000];
+        new Random(5).nextBytes(sample);
+        var bos = new ByteArrayOutputStream();
+        Encoder.encodeStream(new ByteArrayInputStream(sample), bos, 8, 8);
+        var encoded = bos.toByteArray();
+
+        // 8 组交织时，传输块的第 10 字节即是每组码块的第 10 号比特。
+        // 先在第 1500 套传输块中找一组第 10 号比特原本为 0 的码块，坏列判定之后令它再错一位（20 号比特）
+        int target = Integer.numberOfLeadingZeros(~encoded[1500 * 72 + 10] & 0xFF) - 24;
+        Utils.flipBitInArray(encoded, 1500 * 72 * 8 + 20 * 8 + target);
+        // 再令第 10 字节“卡在 1”
+        for (int block = 0; block < 2000; block++) {
+            encoded[block * 72 + 10] = (byte) 0xFF;
+        }
+
+        assertThrows(StreamCorruptedException.class, () ->
+            Decoder.decodeStream(new ByteArrayInputStream(encoded), new ByteArrayOutputStream(), 8, 8)
+        );
+
+        var chipkill = new ChipkillDecoder(LinearCode.hamming(8), 8, 256, 0.125);
+        var decoded = new ByteArrayOutputStream();
+        chipkill.decodeStream(new ByteArrayInputStream(encoded), decoded);
+
+        assertArrayEquals(sample, decoded.toByteArray());
+        assertArrayEquals(new int[]{10}, chipkill.failedColumns());
+    }
+
+    @Test
+    void testCleanStreamHasNoFailedColumns() throws IOException {
+        var sample = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789he".getBytes();
+        var bos = new ByteArrayOutputStream();
+        Encoder.encodeStream(new ByteArrayInputStream(sample), bos, 8, 8);
+
+        var chipkill = new ChipkillDecoder(LinearCode.hamming(8), 8, 8, 0.125);
+        var decoded = new ByteArrayOutputStream();
+        chipkill.decodeStream(new ByteArrayInputStream(bos.toByteArray()), decoded);
+
+        assertArrayEquals(sample, decoded.toByteArray());
+        assertEquals(0, chipkill.failedColumns().length);
+        assertEquals(0, chipkill.correctedBits());
+    }
+
+    @Test
+    void testTruncatedStream() throws IOException {
+        // 最后一套传输块全为 0 且被截断：不足的部分按 0 补齐，而不是沿用上一套的残留数据
+        var sample = new byte[64 * 3];
+        new Random(30).nextBytes(sample);
+        Arrays.fill(sample, 128, sample.length, (byte) 0);
+        var bos = new ByteArrayOutputStream();
+        Encoder.encodeStream(new ByteArrayInputStream(sample), bos, 8, 8);
+        var encoded = bos.toByteArray();
+        var truncated = Arrays.copyOf(encoded, encoded.length - 30);
+
+        var chipkill = new ChipkillDecoder(CodecPlan.code(StreamHeader.Layout.POSITIONAL, 8), 8);
+        var decoded = new ByteArrayOutputStream();
+        chipkill.decodeStream(new ByteArrayInputStream(truncated), decoded);
+        assertArrayEquals(sample, decoded.toByteArray());
+        assertEquals(0, chipkill.correctedBits());
+    }
+}
@@ -0,0 +1,58 @@
+package fun.yanwk.playground.hamming;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CodecPlanTest {
+
+    @Test
+    void testGeometry() {
+        for (int dataPerBlock = 1; dataPerBlock <= 300; dataPerBlock++) {
+            var plan = CodecPlan.of(StreamHeader.Layout.POSITIONAL, dataPerBlock, 8);
+            var expected = Encoder.hammingEncodeOneBlock(new byte[dataPerBlock]).length;
+            assertEquals(expected, plan.codeSize);
+            assertEquals(expected, plan.code().codeSize());
+            assertEquals(expected, LinearCode.systematicHamming(dataPerBlock).codeSize());
+            assertEquals(expected * 8, plan.encodedSize());
+            assertEquals(dataPerBlock * 8, plan.plainSize());
+        }
+        // (72,64)：7 位校验位 + 1 位扩展校验位
+        assertEquals(7, CodecPlan.of(StreamHeader.Layout.POSITIONAL, 8, 8).parityBits);
+
+        assertThrows(IllegalArgumentException.class, () -> CodecPlan.of(StreamHeader.Layout.POSITIONAL, 8, 0));
+    }
+
+    @Test
+    void testCachedPerGeometry() {
+        var plan = CodecPlan.of(StreamHeader.Layout.POSITIONAL, 8, 8);
+        assertSame(plan, CodecPlan.of(new StreamHeader(StreamHeader.Layout.POSITIONAL, 8, 8)));
+        assertSame(plan.codec(), plan.codec());
+        assertNotSame(plan, CodecPlan.of(StreamHeader.Layout.SYSTEMATIC, 8, 8));
+
+        // 交织组数量不同的计划共用同一个线性码
+        var wide = CodecPlan.of(StreamHeader.Layout.POSITIONAL, 8, 64);
+        assertNotSame(plan, wide);
+        assertSame(plan.code(), wide.code());
+        assertSame(plan.code(), new StreamHeader(StreamHeader.Layout.POSITIONAL, 8, 16).code());
+        assertNotSame(plan.code(), CodecPlan.of(StreamHeader.Layout.SYSTEMATIC, 8, 8).code());
+
+        // 以线性码取编解码器：缓存的线性码命中执行计划，自行构造的线性码不进入缓存
+        assertSame(plan.codec(), CodecPlan.codec(plan.code(), 8));
+        assertSame(wide.codec(), CodecPlan.codec(wide.code(), 64));
+        var adHoc = LinearCode.hamming(8);
+        assertNotSame(CodecPlan.codec(adHoc, 8), CodecPlan.codec(adHoc, 8));
+    }
+
+    @Test
+    void testConcurrentFirstUse() {
+        // 多个线程同时首次取用，只生成一份表
+        var codecs = ConcurrentHashMap.<SpecializedCodec>newKeySet();
+        IntStream.range(0, 64).parallel().forEach(i -> codecs.add(CodecPlan.of(StreamHeader.Layout.SYSTEMATIC, 13, 24).codec()));
+        assertEquals(1, codecs.size());
+    }
+
+}
@@ -2,10 +2,13 @@ package fun.yanwk.playground.hamming;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -136,4 +139,54 @@ public class DecoderTest {
         var nineExpected = new byte[]{-1, 0, -128, 127, 1, 64, 99, 57};
         assertArrayEquals(nineExpected, nine);
     }
+
+    @Test
+    void testDecodeStreamWithCrc() throws IOException {
+        var sample = new byte[64 * 5]; // 5 套传输块，每 2 套一个超级块
+        new Random(3).nextBytes(sample);
+        var header = new StreamHeader(StreamHeader.Layout.POSITIONAL, 8, 8, 2);
+
+        var bos = new ByteArrayOutputStream();
+        Encoder.encodeStream(new ByteArrayInputStream(sample), bos, header);
+        var encoded = bos.toByteArray();
+        assertEquals(StreamHeader.SIZE + 3 * StreamHeader.CHECKSUM_SIZE + 5 * 72, encoded.length);
+
+        // 无错
+        var clean = new ByteArrayOutputStream();
+        var in = new BufferedInputStream(new ByteArrayInputStream(encoded));
+        Decoder.decodeStream(in, clean, StreamHeader.read(in));
+        assertArrayEquals(sample, clean.toByteArray());
+
+        // 在第 1 号超级块（第 2 套传输块）的第 0 组码块中翻转 3、5、6 号比特：汉明码会误判为扩展校验位出错
+        int blockStart = (StreamHeader.SIZE + 2 * StreamHeader.CHECKSUM_SIZE + 2 * 72) * 8;
+        for (int bit : new int[]{3, 5, 6}) {
+            Utils.flipBitInArray(encoded, blockStart + bit * 8);
+        }
+        var distorted = new BufferedInputStream(new ByteArrayInputStream(encoded));
+        var bad = new ByteArrayOutputStream();
+        Exception exception = assertThrows(StreamCorruptedException.class, () -> {
+            Decoder.decodeStream(distorted, bad, StreamHeader.read(distorted));
+        });
+        assertTrue(exception.getMessage().contains("第 1 号超级块"));
+        // 只输出校验通过的第 0 号超级块，乱纠错的数据不交给调用者
+        assertArrayEquals(Arrays.copyOf(sample, 2 * 64), bad.toByteArray());
+    }
+
+    @Test
+    void testDecodeStreamWithCrcTruncated() throws IOException {
+        // 最后一套传输块全为 0，截断后按 0 补齐即可还原；若残留上一套的数据则 CRC 不符
+        var sample = new byte[64 * 5];
+        new Random(29).nextBytes(sample);
+        Arrays.fill(sample, 64 * 4, sample.length, (byte) 0);
+        var header = new StreamHeader(StreamHeader.Layout.POSITIONAL, 8, 8, 2);
+        var bos = new ByteArrayOutputStream();
+        Encoder.encodeStream(new ByteArrayInputStream(sample), bos, header);
+        var encoded = bos.toByteArray();
+        var truncated = Arrays.copyOf(encoded, encoded.length - 30);
+
+        var decoded = new ByteArrayOutputStream();
+        var in = new BufferedInputStream(new ByteArrayInputStream(truncated));
+        Decoder.decodeStream(in, decoded, StreamHeader.read(in));
+        assertArrayEquals(sample, decoded.toByteArray());
+    }
 }
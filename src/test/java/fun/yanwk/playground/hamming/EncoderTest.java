@@ -2,11 +2,16 @@ package fun.yanwk.playground.hamming;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
 
-import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class EncoderTest {
 
@@ -116,4 +121,99 @@ public class EncoderTest {
             0, 0, 0, -1, -1, -1, 0, 0, -1};
         assertArrayEquals(seventyTwoExpected, seventyTwo);
     }
+
+    @Test
+    void testAppendInterruptedRewrite() throws IOException {
+        var sample = new byte[101];
+        new Random(41).nextBytes(sample);
+        var header = new StreamHeader(StreamHeader.Layout.POSITIONAL, 8, 8, 0, true);
+        var file = Files.createTempFile("hamming-append", ".hmc");
+        var after = Files.createTempFile("hamming-append", ".hmc");
+        var journal = RangeUpdater.journalOf(file);
+        Files.delete(file);
+        Files.delete(after);
+        try {
+            Encoder.appendFile(new ByteArrayInputStream(sample, 0, 100), file, header);
+            Files.copy(file, after);
+            Encoder.appendFile(new ByteArrayInputStream(sample, 100, 1), after, header);
+
+            // 模拟重写第 1 套传输块时中断：日志已落盘，原位只写了一半，长度字仍为 100
+            final int position = StreamHeader.SIZE + StreamHeader.LENGTH_SIZE + 72;
+            var rewritten = Arrays.copyOfRange(Files.readAllBytes(after), position, position + 72);
+            RangeUpdater.writeJournal(journal, position, rewritten);
+            var torn = Files.readAllBytes(file);
+            System.arraycopy(rewritten, 0, torn, position, 36);
+            Files.write(file, torn);
+
+            // 下次追加前按日志重做，旧长度下的旧数据可以完整解码
+            assertEquals(100, Encoder.appendFile(new ByteArrayInputStream(new byte[0]), file, header));
+            assertFalse(Files.exists(journal));
+            var in = new BufferedInputStream(new ByteArrayInputStream(Files.readAllBytes(file)));
+            var decoded = new ByteArrayOutputStream();
+            Decoder.decodeStream(in, decoded, StreamHeader.read(in));
+            assertArrayEquals(Arrays.copyOf(sample, 100), decoded.toByteArray());
+        } finally {
+            Files.deleteIfExists(journal);
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(after);
+        }
+    }
+
+    @Test
+    void testAppendFile() throws IOException {
+        var sample = new byte[64 * 10 + 37];
+        new Random(34).nextBytes(sample);
+        var file = Files.createTempFile("hamming-append", ".hmc");
+        Files.delete(file); // 由 appendFile 新建
+        try {
+            var header = new StreamHeader(StreamHeader.Layout.POSITIONAL, 8, 8, 0, true);
+            // 分三次追加，每次都不在传输块边界上结束
+            assertEquals(100, Encoder.appendFile(new ByteArrayInputStream(sample, 0, 100), file, header));
+            assertEquals(101, Encoder.appendFile(new ByteArrayInputStream(sample, 100, 1), file, header));
+            assertEquals(101, Encoder.appendFile(new ByteArrayInputStream(new byte[0]), file, header));
+            assertEquals(sample.length,
+                Encoder.appendFile(new ByteArrayInputStream(sample, 101, sample.length - 101), file, header));
+
+            var encoded = Files.readAllBytes(file);
+            assertEquals(StreamHeader.SIZE + StreamHeader.LENGTH_SIZE + 11 * 72, encoded.length);
+            assertFalse(Files.exists(RangeUpdater.journalOf(file)));
+
+            // 与一次性追加的结果逐字节一致
+            var once = Files.createTempFile("hamming-append", ".hmc");
+            Files.delete(once);
+            try {
+                Encoder.appendFile(new ByteArrayInputStream(sample), once, header);
+                assertArrayEquals(Files.readAllBytes(once), encoded);
+            } finally {
+                Files.deleteIfExists(once);
+            }
+
+            // 解码时去掉末尾填充的 0，长度字中的一位错误可被纠正
+            Utils.flipBitInArray(encoded, StreamHeader.SIZE * 8 + 40);
+            var in = new BufferedInputStream(new ByteArrayInputStream(encoded));
+            var read = StreamHeader.read(in);
+            assertNotNull(read);
+            assertTrue(read.appendable);
+            var decoded = new ByteArrayOutputStream();
+            Decoder.decodeStream(in, decoded, read);
+            assertArrayEquals(sample, decoded.toByteArray());
+
+            // 文件头不可追加时报错，且不留下空文件
+            Files.delete(file);
+            var fixed = new StreamHeader(StreamHeader.Layout.POSITIONAL, 8, 8);
+            assertThrows(IllegalArgumentException.class, () ->
+                Encoder.appendFile(new ByteArrayInputStream(sample), file, fixed)
+            );
+            assertFalse(Files.exists(file));
+
+            // 截断的文件不能追加
+            Files.write(file, Arrays.copyOf(encoded, encoded.length - 1));
+            assertThrows(StreamCorruptedException.class, () ->
+                Encoder.appendFile(new ByteArrayInputStream(sample), file, header)
+            );
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
 }
@@ -0,0 +1,48 @@
+package fun.yanwk.playground.hamming;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JammerTest {
+
+    @Test
+    void testDistortFile() throws IOException {
+        var sample = new byte[300_000];
+        new Random(39).nextBytes(sample);
+        var source = Files.createTempFile("hamming-jammer", ".in");
+        var target = Files.createTempFile("hamming-jammer", ".out");
+        try {
+            Files.write(source, sample);
+
+            // 干扰位置单调递增，不会重复翻转同一比特，差异比特数即是翻转数
+            long flipped = Jammer.distortFile(source, target, 1e-3, 8);
+            var distorted = Files.readAllBytes(target);
+            assertEquals(sample.length, distorted.length);
+            long diff = 0;
+            for (int i = 0; i < sample.length; i++) {
+                diff += Integer.bitCount((sample[i] ^ distorted[i]) & 0xFF);
+            }
+            assertEquals(flipped, diff);
+            assertEquals(sample.length * 8 * 1e-3, flipped, sample.length * 8 * 1e-3 * 0.3);
+
+            // 概率为 1 时每次干扰之后恰好间隔一位，即隔位翻转，所有修改首尾相连（超过合并上限）
+            assertEquals(sample.length * 4L, Jammer.distortFile(source, target, 1, 1));
+            distorted = Files.readAllBytes(target);
+            for (int i = 0; i < sample.length; i++) {
+                assertEquals((byte) (sample[i] ^ 0xAA), distorted[i]);
+            }
+
+            assertEquals(0, Jammer.distortFile(source, target, 0, 8));
+            assertArrayEquals(sample, Files.readAllBytes(target));
+        } finally {
+            Files.deleteIfExists(source);
+            Files.deleteIfExists(target);
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package fun.yanwk.playground.hamming;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StreamCorruptedException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LinearCodeTest {
+
+    @Test
+    void testHammingSameAsEncoder() {
+        var random = new Random(1);
+        for (int dataPerBlock : new int[]{1, 2, 3, 7, 8, 16, 100}) {
+            var code = LinearCode.hamming(dataPerBlock);
+            for (int n = 0; n < 20; n++) {
+                var data = new byte[dataPerBlock];
+                random.nextBytes(data);
+                var expected = Encoder.hammingEncodeOneBlock(data);
+                assertArrayEquals(expected, code.encode(data));
+                assertEquals(0, code.syndrome(expected, 0));
+            }
+        }
+
+        var eight = LinearCode.hamming(8).encode(new byte[]{-1, 0, -128, 127, 1, 64, 99, 57});
+        assertArrayEquals(new byte[]{-9, 120, -126, 1, 126, 2, -128, -58, 57}, eight);
+    }
+
+    @Test
+    void testCorrectEveryPosition() throws StreamCorruptedException {
+        var random = new Random(2);
+        for (var code : new LinearCode[]{LinearCode.hamming(8), LinearCode.systematicHamming(8)}) {
+            var data = new byte[8];
+            random.nextBytes(data);
+            var clean = code.encode(data);
+            // 码块为 72 比特，不含填充位
+            for (int addr = 0; addr < 72; addr++) {
+                var block = clean.clone();
+                Utils.flipBitInArray(block, addr);
+                assertEquals(addr, code.correct(block, 0));
+                assertArrayEquals(clean, block);
+
+                var decoded = new byte[8];
+                code.decode(block, 0, decoded, 0);
+                assertArrayEquals(data, decoded);
+            }
+        }
+    }
+
+    @Test
+    void testDetectDoubleError() {
+        for (var code : new LinearCode[]{LinearCode.hamming(8), LinearCode.systematicHamming(8)}) {
+            var clean = code.encode(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+            for (int a = 0; a < 72; a++) {
+                for (int b = a + 1; b < 72; b++) {
+                    var block = clean.clone();
+                    Utils.flipBitInArray(block, a);
+                    Utils.flipBitInArray(block, b);
+                    assertThrows(StreamCorruptedException.class, () -> code.correct(block, 0));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testSystematicLayout() {
+        var code = LinearCode.systematicHamming(8);
+        assertTrue(code.isSystematic());
+        assertFalse(LinearCode.hamming(8).isSystematic());
+        assertEquals(LinearCode.hamming(8).codeSize(), code.codeSize());
+
+        var data = "systemat".getBytes();
+        var block = code.encode(data);
+        var payload = new byte[8];
+        System.arraycopy(block, 0, payload, 0, 8);
+        assertArrayEquals(data, payload);
+    }
+}
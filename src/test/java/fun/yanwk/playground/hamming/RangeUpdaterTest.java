@@ -0,0 +1,97 @@
+package fun.yanwk.playground.hamming;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RangeUpdaterTest {
+
+    private static Path encodedFile(byte[] sample) throws IOException {
+        var bos = new ByteArrayOutputStream();
+        Encoder.encodeStream(new ByteArrayInputStream(sample), bos, 8, 8);
+        var file = Files.createTempFile("hamming-update", ".hmc");
+        Files.write(file, bos.toByteArray());
+        return file;
+    }
+
+    private static byte[] decodedFile(Path file) throws IOException {
+        var decoded = new ByteArrayOutputStream();
+        Decoder.decodeStream(new ByteArrayInputStream(Files.readAllBytes(file)), decoded, 8, 8);
+        return decoded.toByteArray();
+    }
+
+    @Test
+    void testUpdateAcrossBlocks() throws IOException {
+        var sample = new byte[64 * 20];
+        new Random(35).nextBytes(sample);
+        var file = encodedFile(sample);
+        try {
+            // 在被修改的传输块中预先放一位错误，更新时应被顺带纠正
+            var encoded = Files.readAllBytes(file);
+            Utils.flipBitInArray(encoded, 3 * 72 * 8 + 17);
+            Files.write(file, encoded);
+
+            var patch = new byte[100];
+            new Random(36).nextBytes(patch);
+            RangeUpdater.update(file, 150, patch, 8, 8);
+
+            var expected = sample.clone();
+            System.arraycopy(patch, 0, expected, 150, patch.length);
+            assertArrayEquals(expected, decodedFile(file));
+            assertFalse(Files.exists(RangeUpdater.journalOf(file)));
+
+            // 只有第 2~3 套传输块被改写
+            var updated = Files.readAllBytes(file);
+            assertArrayEquals(Arrays.copyOfRange(encoded, 0, 2 * 72), Arrays.copyOfRange(updated, 0, 2 * 72));
+            assertArrayEquals(Arrays.copyOfRange(encoded, 4 * 72, encoded.length),
+                Arrays.copyOfRange(updated, 4 * 72, updated.length));
+
+            assertThrows(IllegalArgumentException.class, () ->
+                RangeUpdater.update(file, sample.length - 1, new byte[2], 8, 8)
+            );
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testRecoverFromJournal() throws IOException {
+        var sample = new byte[64 * 4];
+        new Random(37).nextBytes(sample);
+        var file = encodedFile(sample);
+        var journal = RangeUpdater.journalOf(file);
+        try {
+            // 模拟写完日志、尚未写回时中断：重做后得到新数据
+            var replacement = new byte[64];
+            Arrays.fill(replacement, (byte) 0x5A);
+            var bos = new ByteArrayOutputStream();
+            Encoder.encodeStream(new ByteArrayInputStream(replacement), bos, 8, 8);
+            RangeUpdater.writeJournal(journal, 72, bos.toByteArray());
+
+            assertTrue(RangeUpdater.recover(file));
+            assertFalse(Files.exists(journal));
+            var expected = sample.clone();
+            Arrays.fill(expected, 64, 128, (byte) 0x5A);
+            assertArrayEquals(expected, decodedFile(file));
+
+            // 日志没写完整：原文件不变，日志被丢弃
+            RangeUpdater.writeJournal(journal, 0, bos.toByteArray());
+            Files.write(journal, Arrays.copyOf(Files.readAllBytes(journal), 40));
+            assertFalse(RangeUpdater.recover(file));
+            assertFalse(Files.exists(journal));
+            assertArrayEquals(expected, decodedFile(file));
+        } finally {
+            Files.deleteIfExists(journal);
+            Files.deleteIfExists(file);
+        }
+    }
+
+}
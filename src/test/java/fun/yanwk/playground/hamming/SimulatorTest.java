@@ -0,0 +1,65 @@
+package fun.yanwk.playground.hamming;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SimulatorTest {
+
+    @Test
+    void testAgreesWithModel() {
+        var scenario = new Simulator.Scenario(1e-3, 1, 8, 8);
+        var result = Simulator.simulate(scenario, 100_000, 36);
+
+        assertEquals(800_000, result.codewords);
+        // 翻转比特数约为 p × 总比特数
+        assertEquals(1e-3 * 100_000 * 72 * 8, result.flippedBits, 1e-3 * 100_000 * 72 * 8 * 0.02);
+
+        // 两位及以上比特错误的码块占比与 Tuner 的估算相符
+        double failures = (double) (result.detected + result.miscorrected) / result.codewords;
+        double model = Tuner.residualFailureRate(new Tuner.ErrorProfile(1e-3, 1), 8, 8) * 8;
+        assertEquals(model, failures, model * 0.2);
+        assertTrue(result.corrected > result.detected + result.miscorrected);
+
+        // 同一种子结果可复现
+        var again = Simulator.simulate(scenario, 100_000, 36);
+        assertEquals(result.flippedBits, again.flippedBits);
+        assertEquals(result.miscorrected, again.miscorrected);
+    }
+
+    @Test
+    void testInterleavingAbsorbsBursts() {
+        // 连续干扰不超过交织组数量时，每组码块最多错一位（除非两次干扰恰好相邻），极少失败
+        var shallow = Simulator.simulate(new Simulator.Scenario(1e-4, 8, 8, 8), 50_000, 1);
+        var burst = Simulator.simulate(new Simulator.Scenario(1e-4, 16, 8, 8), 50_000, 1);
+        assertTrue(shallow.corrected > 0);
+        assertTrue(burst.detected + burst.miscorrected > 10 * (shallow.detected + shallow.miscorrected + 1));
+    }
+
+    @Test
+    void testCsv() throws IOException {
+        var results = Simulator.sweep(new double[]{0, 1e-3}, new int[]{1, 4}, new int[]{4}, new int[]{8, 16}, 100, 0);
+        var csv = new StringBuilder();
+        Simulator.writeCsv(results, 0, csv);
+        var lines = csv.toString().split("\n");
+        assertEquals(1 + 8, lines.length);
+        assertTrue(lines[0].startsWith("probability,maxBurst,dataPerBlock,groups,"));
+        assertTrue(lines[0].endsWith(",model,seed"));
+        assertTrue(lines[1].startsWith("0.00000,1,4,8,800,0,0,0,0,"));
+        assertTrue(lines[1].endsWith(",0"));
+        assertFalse(csv.toString().contains("\r"));
+    }
+
+    @Test
+    void testSweepSeedsPerScenario() {
+        // 参数相同的两个场景各用各的随机数，结果不应完全相同；整个扫描仍可由种子复现
+        var results = Simulator.sweep(new double[]{1e-2, 1e-2}, new int[]{4}, new int[]{8}, new int[]{8}, 2000, 36);
+        assertNotEquals(results.get(0).flippedBits, results.get(1).flippedBits);
+        var again = Simulator.sweep(new double[]{1e-2, 1e-2}, new int[]{4}, new int[]{8}, new int[]{8}, 2000, 36);
+        assertEquals(results.get(0).flippedBits, again.get(0).flippedBits);
+        assertEquals(results.get(1).flippedBits, again.get(1).flippedBits);
+    }
+
+}
@@ -0,0 +1,152 @@
+package fun.yanwk.playground.hamming;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import java.io.StreamCorruptedException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SpecializedCodecTest {
+
+    @Test
+    void testSameAsGenericPath() throws StreamCorruptedException {
+        var random = new Random(40);
+        for (var layout : StreamHeader.Layout.values()) {
+            for (int dataPerBlock : new int[]{1, 2, 3, 7, 8, 16}) {
+                for (int groups : new int[]{1, 3, 8, 12, 64, 72}) {
+                    var codec = CodecPlan.of(layout, dataPerBlock, groups).codec();
+                    var code = codec.code();
+                    var plain = new byte[codec.plainSize()];
+                    random.nextBytes(plain);
+
+                    var expected = Encoder.encodeTransmissionBlock(plain, code, groups, new byte[codec.encodedSize()]);
+                    var encoded = codec.encode(plain, new byte[codec.encodedSize()]);
+                    assertArrayEquals(expected, encoded, layout + " " + dataPerBlock + "×" + groups);
+
+                    // 每组码块各错一位（含校验位与填充位）
+                    var distorted = encoded.clone();
+                    for (int m = 0; m < groups; m++) {
+                        int addr = random.nextInt(code.codeSize() * 8);
+                        Utils.flipBitInArray(distorted, addr * groups + m);
+                    }
+                    var decoded = new byte[codec.plainSize()];
+                    codec.decode(distorted, decoded);
+                    assertArrayEquals(plain, decoded, layout + " " + dataPerBlock + "×" + groups);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testReuseScratch() throws StreamCorruptedException {
+        // (13,8) 码每组码块有 3 位填充位；解码时工作区中留下的填充位不能带入下一次编码
+        var random = new Random(42);
+        var codec = CodecPlan.of(StreamHeader.Layout.POSITIONAL, 1, 24).codec();
+        var scratch = codec.scratch();
+        var noise = new byte[codec.encodedSize()];
+        random.nextBytes(noise);
+        for (int round = 0; round < 20; round++) {
+            var plain = new byte[codec.plainSize()];
+            random.nextBytes(plain);
+            var encoded = codec.encode(plain, new byte[codec.encodedSize()], scratch);
+            assertArrayEquals(codec.encode(plain, new byte[codec.encodedSize()]), encoded);
+
+            var decoded = new byte[codec.plainSize()];
+            codec.decode(encoded, decoded, scratch);
+            assertArrayEquals(plain, decoded);
+            try {
+                codec.decode(noise, decoded, scratch);
+            } catch (StreamCorruptedException e) {
+                // 随机数据多半无法纠错，这里只为弄脏工作区
+            }
+        }
+    }
+
+    @Test
+    @Disabled
+    void benchmark() throws StreamCorruptedException {
+        // 通用路径与特化编解码器（每块新建工作区 / 复用工作区）的吞吐量，按有效数据计
+        for (int[] geometry : new int[][]{{8, 8}, {8, 64}, {32, 16}}) {
+            var codec = CodecPlan.of(StreamHeader.Layout.POSITIONAL, geometry[0], geometry[1]).codec();
+            var code = codec.code();
+            var groups = codec.groups();
+            var plain = new byte[codec.plainSize()];
+            new Random(43).nextBytes(plain);
+            var encoded = new byte[codec.encodedSize()];
+            var decoded = new byte[codec.plainSize()];
+            var scratch = codec.scratch();
+            final int rounds = (64 << 20) / plain.length;
+
+            for (int pass = 0; pass < 2; pass++) { // 第一轮为预热
+                long start = System.nanoTime();
+                for (int i = 0; i < rounds; i++) {
+                    Encoder.encodeTransmissionBlock(plain, code, groups, encoded);
+                    Decoder.decodeTransmissionBlock(encoded, code, groups, decoded);
+                }
+                long generic = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < rounds; i++) {
+                    codec.encode(plain, encoded);
+                    codec.decode(encoded, decoded);
+                }
+                long allocating = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < rounds; i++) {
+                    codec.encode(plain, encoded, scratch);
+                    codec.decode(encoded, decoded, scratch);
+                }
+                long reusing = System.nanoTime() - start;
+
+                if (pass == 1) {
+                    double mb = (double) rounds * plain.length / 1e6;
+                    System.out.printf("%d×%d 通用：%.1f MB/s，特化：%.1f MB/s，特化且复用工作区：%.1f MB/s%n",
+                        geometry[0], groups, mb / (generic / 1e9), mb / (allocating / 1e9), mb / (reusing / 1e9));
+                }
+            }
+        }
+    }
+
+    @Test
+    @Disabled
+    void benchmarkLayouts() throws StreamCorruptedException {
+        // 两种布局的解码吞吐量：交织后的传输块中数据同样是转置存放的，系统布局没有可以整段复制的捷径。
+        // 两种布局轮流测量多轮，取最后一轮，避免先测者吃亏于 JIT 预热
+        var layouts = StreamHeader.Layout.values();
+        for (int[] geometry : new int[][]{{8, 8}, {8, 64}, {32, 16}}) {
+            double[] rates = new double[layouts.length];
+            for (int pass = 0; pass < 4; pass++) {
+                for (var layout : layouts) {
+                    var codec = CodecPlan.of(layout, geometry[0], geometry[1]).codec();
+                    var plain = new byte[codec.plainSize()];
+                    new Random(44).nextBytes(plain);
+                    var encoded = codec.encode(plain, new byte[codec.encodedSize()]);
+                    var decoded = new byte[codec.plainSize()];
+                    var scratch = codec.scratch();
+                    final int rounds = (32 << 20) / plain.length;
+                    long start = System.nanoTime();
+                    for (int i = 0; i < rounds; i++) {
+                        codec.decode(encoded, decoded, scratch);
+                    }
+                    rates[layout.ordinal()] = (double) rounds * plain.length / 1e6 / ((System.nanoTime() - start) / 1e9);
+                }
+            }
+            System.out.printf("%d×%d 解码 传统布局：%.1f MB/s，系统布局：%.1f MB/s%n",
+                geometry[0], geometry[1], rates[0], rates[1]);
+        }
+    }
+
+    @Test
+    void testDetectDoubleError() throws StreamCorruptedException {
+        var codec = CodecPlan.of(StreamHeader.Layout.POSITIONAL, 8, 16).codec();
+        var encoded = codec.encode(new byte[codec.plainSize()], new byte[codec.encodedSize()]);
+        // 第 5 组码块的地址 3 与 40
+        Utils.flipBitInArray(encoded, 3 * 16 + 5);
+        Utils.flipBitInArray(encoded, 40 * 16 + 5);
+        assertThrows(StreamCorruptedException.class, () -> codec.decode(encoded, new byte[codec.plainSize()]));
+    }
+
+}
@@ -0,0 +1,86 @@
+package fun.yanwk.playground.hamming;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamHeaderTest {
+
+    @Test
+    void testSystematicRoundTrip() throws IOException {
+        var sample = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789hello_world!".getBytes();
+
+        var bos = new ByteArrayOutputStream();
+        var header = new StreamHeader(StreamHeader.Layout.SYSTEMATIC, 8, 8);
+        header.write(bos);
+        Encoder.encodeStream(new ByteArrayInputStream(sample), bos, header.code(), header.groupsPerInterleaving);
+        var encoded = bos.toByteArray();
+        assertEquals(StreamHeader.SIZE + 144, encoded.length);
+
+        // 连续 8 个比特出错，交织后每组码块只错一位
+        for (int bitAddr = StreamHeader.SIZE * 8 + 30; bitAddr < StreamHeader.SIZE * 8 + 38; bitAddr++) {
+            Utils.flipBitInArray(encoded, bitAddr);
+        }
+
+        var in = new BufferedInputStream(new ByteArrayInputStream(encoded));
+        var read = StreamHeader.read(in);
+        assertNotNull(read);
+        assertEquals(StreamHeader.Layout.SYSTEMATIC, read.layout);
+        assertEquals(8, read.dataPerBlock);
+        assertEquals(8, read.groupsPerInterleaving);
+
+        var decoded = new ByteArrayOutputStream();
+        Decoder.decodeStream(in, decoded, read.code(), read.groupsPerInterleaving);
+        var expected = new byte[128];
+        System.arraycopy(sample, 0, expected, 0, sample.length);
+        assertArrayEquals(expected, decoded.toByteArray());
+    }
+
+    @Test
+    void testLegacyStreamHasNoHeader() throws IOException {
+        var legacy = new byte[]{-114, 12, 68, 0, -119, -2, -15, 51, 42, 84, 15, 14, -2, 0, -2, -15, -14};
+        var in = new BufferedInputStream(new ByteArrayInputStream(legacy));
+        assertNull(StreamHeader.read(in));
+        // 输入流已复位
+        assertArrayEquals(legacy, in.readAllBytes());
+    }
+
+    @Test
+    void testUnknownVersion() throws IOException {
+        var bos = new ByteArrayOutputStream();
+        new StreamHeader(StreamHeader.Layout.POSITIONAL, 8, 8).write(bos);
+        var raw = bos.toByteArray();
+        raw[4] = 99;
+        var in = new BufferedInputStream(new ByteArrayInputStream(raw));
+        assertThrows(StreamCorruptedException.class, () -> StreamHeader.read(in));
+    }
+
+    @Test
+    void testCorruptedHeader() throws IOException {
+        var bos = new ByteArrayOutputStream();
+        new StreamHeader(StreamHeader.Layout.SYSTEMATIC, 8, 8, 4).write(bos);
+        var raw = bos.toByteArray();
+
+        // 魔数之后任意一位出错都能被发现，不会读出错误的几何参数
+        for (int bitAddr = 32; bitAddr < StreamHeader.SIZE * 8; bitAddr++) {
+            var damaged = raw.clone();
+            Utils.flipBitInArray(damaged, bitAddr);
+            var in = new BufferedInputStream(new ByteArrayInputStream(damaged));
+            assertThrows(StreamCorruptedException.class, () -> StreamHeader.read(in), "bit " + bitAddr);
+        }
+
+        assertThrows(IllegalArgumentException.class,
+            () -> new StreamHeader(StreamHeader.Layout.POSITIONAL, StreamHeader.MAX_DATA_PER_BLOCK + 1, 8));
+        assertThrows(IllegalArgumentException.class,
+            () -> new StreamHeader(StreamHeader.Layout.POSITIONAL, 8, StreamHeader.MAX_GROUPS + 1));
+        assertThrows(IllegalArgumentException.class,
+            () -> new StreamHeader(StreamHeader.Layout.POSITIONAL, 0, 8));
+    }
+
+}
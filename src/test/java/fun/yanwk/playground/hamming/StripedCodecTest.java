@@ -0,0 +1,119 @@
+package fun.yanwk.playground.hamming;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StripedCodecTest {
+
+    private static Path[] stripes(Path dir, int n) {
+        var paths = new Path[n];
+        for (int s = 0; s < n; s++) {
+            paths[s] = dir.resolve("stripe." + s);
+        }
+        return paths;
+    }
+
+    private static void deleteAll(Path dir) throws IOException {
+        try (var files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                Files.delete(p);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    void testToleratesOneMissingStripe() throws IOException {
+        // (72,64) 码分成 24 个条带，每个条带在一组码块中恰好 3 列
+        var header = new StreamHeader(StreamHeader.Layout.POSITIONAL, 8, 8);
+        assertEquals(3, StripedCodec.maxColumnsPerStripe(header.code(), 24));
+
+        var sample = new byte[64 * 3000]; // 跨越多批
+        new Random(37).nextBytes(sample);
+        var dir = Files.createTempDirectory("hamming-striped");
+        try {
+            var paths = stripes(dir, 24);
+            StripedCodec.encodeStream(new ByteArrayInputStream(sample), paths, header);
+            assertEquals(StripedCodec.STRIPE_HEADER_SIZE + 3000 * 3, Files.size(paths[0]));
+
+            // 各条带按列拼回，即与普通编码的输出一致
+            var expected = new ByteArrayOutputStream();
+            Encoder.encodeStream(new ByteArrayInputStream(sample), expected, 8, 8);
+            var encoded = expected.toByteArray();
+            var stripe5 = Files.readAllBytes(paths[5]);
+            assertEquals(encoded[72 + 5], stripe5[StripedCodec.STRIPE_HEADER_SIZE + 3]);
+            assertEquals(encoded[72 + 29], stripe5[StripedCodec.STRIPE_HEADER_SIZE + 4]);
+
+            var decoded = new ByteArrayOutputStream();
+            StripedCodec.decodeStream(paths, decoded);
+            assertArrayEquals(sample, decoded.toByteArray());
+
+            // 一个条带长度不足（写入中断），按缺失恢复，输出不被截断
+            var full = Files.readAllBytes(paths[3]);
+            Files.write(paths[3], Arrays.copyOf(full, full.length - 100));
+            decoded = new ByteArrayOutputStream();
+            StripedCodec.decodeStream(paths, decoded);
+            assertArrayEquals(sample, decoded.toByteArray());
+
+            // 一个条带长度不足，另一个条带缺失
+            var moved = dir.resolve("moved");
+            Files.move(paths[7], moved);
+            assertThrows(StreamCorruptedException.class, () ->
+                StripedCodec.decodeStream(paths, new ByteArrayOutputStream())
+            );
+            Files.move(moved, paths[7]);
+            Files.write(paths[3], full);
+
+            // 一个条带缺失
+            Files.delete(paths[7]);
+            decoded = new ByteArrayOutputStream();
+            StripedCodec.decodeStream(paths, decoded);
+            assertArrayEquals(sample, decoded.toByteArray());
+
+            // 两个条带缺失
+            Files.delete(paths[8]);
+            var twoMissing = paths;
+            assertThrows(StreamCorruptedException.class, () ->
+                StripedCodec.decodeStream(twoMissing, new ByteArrayOutputStream())
+            );
+        } finally {
+            deleteAll(dir);
+        }
+    }
+
+    @Test
+    void testTooFewStripesForErasure() throws IOException {
+        var header = new StreamHeader(StreamHeader.Layout.SYSTEMATIC, 8, 16);
+        var sample = new byte[128 * 10];
+        new Random(38).nextBytes(sample);
+        var dir = Files.createTempDirectory("hamming-striped");
+        try {
+            var paths = stripes(dir, 9);
+            StripedCodec.encodeStream(new ByteArrayInputStream(sample), paths, header);
+
+            var decoded = new ByteArrayOutputStream();
+            StripedCodec.decodeStream(paths, decoded);
+            assertArrayEquals(sample, decoded.toByteArray());
+
+            // 9 个条带时每个条带有 8 列，超过 SEC-DED 的擦除上限
+            var missing = Arrays.copyOf(paths, paths.length);
+            missing[0] = null;
+            assertThrows(StreamCorruptedException.class, () ->
+                StripedCodec.decodeStream(missing, new ByteArrayOutputStream())
+            );
+        } finally {
+            deleteAll(dir);
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+package fun.yanwk.playground.hamming;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TelemetryTest {
+
+    private static byte[] encodedSample(byte[] sample) throws IOException {
+        new Random(33).nextBytes(sample);
+        var bos = new ByteArrayOutputStream();
+        Encoder.encodeStream(new ByteArrayInputStream(sample), bos, 8, 8);
+        return bos.toByteArray();
+    }
+
+    @Test
+    void testMXBeanCounters() throws Exception {
+        var server = ManagementFactory.getPlatformMBeanServer();
+        var name = new ObjectName(Telemetry.OBJECT_NAME);
+        Telemetry.STATS.getBlocks(); // 触发类初始化
+        assertTrue(server.isRegistered(name));
+
+        var sample = new byte[64 * 10];
+        var encoded = encodedSample(sample);
+        Utils.flipBitInArray(encoded, 3 * 72 * 8 + 100); // 第 3 套传输块中错一位
+
+        long blocks = (Long) server.getAttribute(name, "Blocks");
+        long corrected = (Long) server.getAttribute(name, "CorrectedBits");
+        long bytesOut = (Long) server.getAttribute(name, "BytesOut");
+
+        var decoded = new ByteArrayOutputStream();
+        Decoder.decodeStream(new ByteArrayInputStream(encoded), decoded, 8, 8);
+        assertArrayEquals(sample, decoded.toByteArray());
+
+        assertEquals(blocks + 10, (Long) server.getAttribute(name, "Blocks"));
+        assertEquals(corrected + 1, (Long) server.getAttribute(name, "CorrectedBits"));
+        assertEquals(bytesOut + sample.length, (Long) server.getAttribute(name, "BytesOut"));
+    }
+
+    @Test
+    void testRateDoesNotDependOnReaders() throws Exception {
+        var server = ManagementFactory.getPlatformMBeanServer();
+        var name = new ObjectName(Telemetry.OBJECT_NAME);
+        encodedSample(new byte[64 * 10]);
+
+        // 读取速率不改变任何状态：两个客户端先后读取，得到的都是自计数起点以来的平均值
+        long elapsed = (Long) server.getAttribute(name, "ElapsedNanos");
+        double first = (Double) server.getAttribute(name, "BlocksPerSecond");
+        double second = (Double) server.getAttribute(name, "BlocksPerSecond");
+        assertTrue(first > 0);
+        assertTrue(second > 0);
+        assertTrue((Long) server.getAttribute(name, "ElapsedNanos") >= elapsed);
+    }
+
+    @Test
+    void testStripedQueueReleased() throws Exception {
+        final long baseline = Telemetry.STATS.getQueuedBytes();
+        var dir = Files.createTempDirectory("hamming-telemetry");
+        var paths = new Path[]{dir.resolve("stripe.0"), dir.resolve("stripe.1")};
+        try {
+            var sample = new byte[64 * 3000];
+            StripedCodec.encodeStream(new ByteArrayInputStream(sample), paths,
+                new StreamHeader(StreamHeader.Layout.POSITIONAL, 8, 8));
+            assertEquals(baseline, Telemetry.STATS.getQueuedBytes());
+        } finally {
+            for (Path p : paths) {
+                Files.deleteIfExists(p);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    void testCorrectionEventRecorded() throws Exception {
+        var sample = new byte[64 * 4];
+        var encoded = encodedSample(sample);
+        Utils.flipBitInArray(encoded, 72 * 8 + 5 * 8); // 第 1 套传输块、第 0 组码块的 5 号比特
+
+        Path dump = Files.createTempFile("hamming-telemetry", ".jfr");
+        try (var recording = new Recording()) {
+            recording.enable(Telemetry.CorrectionEvent.class);
+            recording.start();
+            Decoder.decodeStream(new ByteArrayInputStream(encoded), new ByteArrayOutputStream(), 8, 8);
+            recording.stop();
+            recording.dump(dump);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+            assertEquals(1, events.size());
+            assertEquals(5, events.get(0).getInt("bitAddress"));
+            assertFalse(events.get(0).getBoolean("uncorrectable"));
+        } finally {
+            Files.deleteIfExists(dump);
+        }
+    }
+
+}
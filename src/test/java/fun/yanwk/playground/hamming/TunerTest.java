@@ -0,0 +1,67 @@
+package fun.yanwk.playground.hamming;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TunerTest {
+
+    @Test
+    void testResidualFailureRate() {
+        var profile = Tuner.ErrorProfile.fromJammer(0.0002, 8);
+
+        // 交织深度不小于最大连续干扰时，单次干扰不会让同一组码块出错两次
+        double shallow = Tuner.residualFailureRate(new Tuner.ErrorProfile(0.0002, 16), 8, 8);
+        double deep = Tuner.residualFailureRate(new Tuner.ErrorProfile(0.0002, 16), 8, 16);
+        assertTrue(deep < shallow);
+
+        // 码块越大，越容易出现两位错误
+        assertTrue(Tuner.residualFailureRate(profile, 64, 8) > Tuner.residualFailureRate(profile, 8, 8));
+
+        // 无噪音则无失败
+        assertEquals(0.0, Tuner.residualFailureRate(new Tuner.ErrorProfile(0, 8), 8, 8));
+    }
+
+    @Test
+    void testEvaluate() throws IOException {
+        var profile = Tuner.ErrorProfile.observed(20, 100_000, 8);
+        var candidates = Tuner.evaluate(profile, 1e-4, 1 << 12);
+        assertFalse(candidates.isEmpty());
+        for (var candidate : candidates) {
+            assertTrue(candidate.residualFailureRate <= 1e-4);
+            assertTrue(candidate.throughput > 0);
+        }
+        for (int i = 1; i < candidates.size(); i++) {
+            assertTrue(candidates.get(i - 1).score() >= candidates.get(i).score());
+        }
+
+        // 目标不可能达到
+        assertTrue(Tuner.evaluate(new Tuner.ErrorProfile(0.1, 64), 1e-12, 1 << 12).isEmpty());
+    }
+
+    @Test
+    void testMeasure() throws IOException {
+        var code = CodecPlan.code(StreamHeader.Layout.POSITIONAL, 8);
+        var bos = new ByteArrayOutputStream();
+        Encoder.encodeStream(new ByteArrayInputStream(new byte[64 * 100]), bos, code, 8);
+        var encoded = bos.toByteArray();
+
+        // 第 3 套传输块中连续 5 位出错，第 50 套中错 1 位
+        for (int bitAddr = 3 * 72 * 8 + 17; bitAddr < 3 * 72 * 8 + 22; bitAddr++) {
+            Utils.flipBitInArray(encoded, bitAddr);
+        }
+        Utils.flipBitInArray(encoded, 50 * 72 * 8 + 300);
+
+        var profile = Tuner.ErrorProfile.measure(new ByteArrayInputStream(encoded), code, 8);
+        assertEquals(6.0 / (encoded.length * 8), profile.probability, 1e-12);
+        assertEquals(5, profile.maxBurst);
+
+        assertThrows(IllegalArgumentException.class, () ->
+            Tuner.ErrorProfile.measure(new ByteArrayInputStream(new byte[10]), code, 8)
+        );
+    }
+}